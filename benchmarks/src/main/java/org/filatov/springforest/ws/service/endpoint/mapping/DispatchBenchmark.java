@@ -0,0 +1,131 @@
+package org.filatov.springforest.ws.service.endpoint.mapping;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+
+import org.filatov.springforest.ws.service.endpoint.mapping.sample.SampleEndpoint;
+import org.filatov.springforest.ws.service.endpoint.mapping.sample.SamplePayloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.context.DefaultMessageContext;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.server.MessageDispatcher;
+import org.springframework.ws.server.endpoint.MethodEndpoint;
+import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
+
+/**
+ * Measures the dispatch pipeline of the {@code SampleService} operations: the
+ * lookup key extraction, the argument resolution and unwrapping, the return
+ * value wrapping and marshalling, and the whole dispatch through a
+ * {@link MessageDispatcher}.
+ *
+ * <p>
+ * Request messages are parsed once per trial, so transport level parsing is
+ * not part of the measurement. Run with the {@code gc} profiler to report the
+ * allocation rate, {@link BenchmarkRunner} adds it by default.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DispatchBenchmark {
+
+	@Param({ "ping", "submit", "exchange" })
+	public String operation;
+
+	@Param({ "small", "large" })
+	public String size;
+
+	private AnnotationConfigApplicationContext applicationContext;
+
+	private SaajSoapMessageFactory messageFactory;
+
+	private MessageDispatcher messageDispatcher;
+
+	private JaxWsAnnotationMethodEndpointMapping endpointMapping;
+
+	private JaxWsAnnotationMethodEndpointAdapter endpointAdapter;
+
+	private MethodEndpoint methodEndpoint;
+
+	private WebServiceMessage request;
+
+	private Object[] arguments;
+
+	private Object returnValue;
+
+	@Setup
+	public void setUp() throws Exception {
+		applicationContext = new AnnotationConfigApplicationContext(JaxWsAnnotationMethodEndpointMapping.class,
+				JaxWsAnnotationMethodEndpointAdapter.class, JaxWsAnnotationMethodPayloadProcessor.class,
+				SampleEndpoint.class);
+		messageFactory = new SaajSoapMessageFactory();
+		messageFactory.afterPropertiesSet();
+		messageDispatcher = new MessageDispatcher();
+		messageDispatcher.setApplicationContext(applicationContext);
+
+		int scale = "large".equals(size) ? SamplePayloads.LARGE : SamplePayloads.SMALL;
+		request = messageFactory.createWebServiceMessage(
+				new ByteArrayInputStream(SamplePayloads.envelope(operation, scale).getBytes("UTF-8")));
+
+		endpointMapping = applicationContext.getBean(JaxWsAnnotationMethodEndpointMapping.class);
+		methodEndpoint = endpointMapping.getRegisteredEndpoints()
+				.get(endpointMapping.getLookupKeyForMessage(newMessageContext()));
+		JaxWsAnnotationMethodPayloadProcessor payloadProcessor = applicationContext
+				.getBean(JaxWsAnnotationMethodPayloadProcessor.class);
+		endpointAdapter = payloadProcessor.supports(methodEndpoint) ? payloadProcessor
+				: applicationContext.getBean("jaxWsAnnotationMethodEndpointAdapter",
+						JaxWsAnnotationMethodEndpointAdapter.class);
+		arguments = endpointAdapter.getMethodArguments(newMessageContext(), methodEndpoint);
+		returnValue = endpointAdapter.invokeMethod(methodEndpoint, arguments);
+	}
+
+	@TearDown
+	public void tearDown() {
+		applicationContext.close();
+	}
+
+	private MessageContext newMessageContext() {
+		return new DefaultMessageContext(request, messageFactory);
+	}
+
+	@Benchmark
+	public QName lookup() throws Exception {
+		return endpointMapping.getLookupKeyForMessage(newMessageContext());
+	}
+
+	@Benchmark
+	public Object[] unwrap() throws Exception {
+		return endpointAdapter.getMethodArguments(newMessageContext(), methodEndpoint);
+	}
+
+	@Benchmark
+	public WebServiceMessage wrap() throws Exception {
+		MessageContext messageContext = newMessageContext();
+		endpointAdapter.handleMethodReturnValue(messageContext, arguments, returnValue, methodEndpoint);
+		return messageContext.getResponse();
+	}
+
+	@Benchmark
+	public WebServiceMessage dispatch() throws Exception {
+		MessageContext messageContext = newMessageContext();
+		messageDispatcher.receive(messageContext);
+		return messageContext.getResponse();
+	}
+}
@@ -0,0 +1,30 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.sample;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement(name = "exchange")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class Exchange {
+
+	private String id;
+
+	private Integer counter;
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public Integer getCounter() {
+		return counter;
+	}
+
+	public void setCounter(Integer counter) {
+		this.counter = counter;
+	}
+}
@@ -0,0 +1,30 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.sample;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement(name = "exchangeResponse")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class ExchangeResponse {
+
+	private Integer counter;
+
+	private String status;
+
+	public Integer getCounter() {
+		return counter;
+	}
+
+	public void setCounter(Integer counter) {
+		this.counter = counter;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+}
@@ -0,0 +1,20 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.sample;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement(name = "ping")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class Ping {
+
+	private String text;
+
+	public String getText() {
+		return text;
+	}
+
+	public void setText(String text) {
+		this.text = text;
+	}
+}
@@ -0,0 +1,29 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.sample;
+
+import java.util.List;
+
+import javax.xml.ws.Holder;
+
+import org.filatov.springforest.ws.service.endpoint.mapping.WebServiceEndpoint;
+import org.springframework.ws.server.endpoint.annotation.RequestPayload;
+import org.springframework.ws.server.endpoint.annotation.ResponsePayload;
+
+@WebServiceEndpoint
+public class SampleEndpoint implements SampleService {
+
+	@ResponsePayload
+	public PingResponse ping(@RequestPayload Ping ping) {
+		PingResponse response = new PingResponse();
+		response.setText(ping.getText());
+		return response;
+	}
+
+	public String submit(String customer, List<String> item) {
+		return customer + ":" + item.size();
+	}
+
+	public void exchange(String id, Holder<Integer> counter, Holder<String> status) {
+		counter.value = null != counter.value ? counter.value + 1 : 1;
+		status.value = id;
+	}
+}
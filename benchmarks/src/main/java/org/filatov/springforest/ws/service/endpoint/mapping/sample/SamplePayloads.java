@@ -0,0 +1,51 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.sample;
+
+/**
+ * Builds request envelopes for the {@link SampleService} operations.
+ */
+public class SamplePayloads {
+
+	/** Scale of small payloads. */
+	public static final int SMALL = 1;
+
+	/** Scale of large payloads, about a hundred kilobytes per operation. */
+	public static final int LARGE = 4096;
+
+	/**
+	 * Returns a SOAP 1.1 envelope invoking the given operation with a payload
+	 * of the given scale.
+	 */
+	public static String envelope(String operation, int scale) {
+		return "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>"
+				+ payload(operation, scale) + "</soapenv:Body></soapenv:Envelope>";
+	}
+
+	/**
+	 * Returns the payload of the given operation with the given scale.
+	 */
+	public static String payload(String operation, int scale) {
+		StringBuilder payload = new StringBuilder();
+		payload.append("<s:").append(operation).append(" xmlns:s=\"").append(SampleService.NAMESPACE).append("\">");
+		if ("ping".equals(operation)) {
+			payload.append("<s:text>").append(text(scale)).append("</s:text>");
+		} else if ("submit".equals(operation)) {
+			payload.append("<s:customer>customer</s:customer>");
+			for (int i = 0; i < scale; i++) {
+				payload.append("<s:item>item-").append(i).append("</s:item>");
+			}
+		} else if ("exchange".equals(operation)) {
+			payload.append("<s:id>").append(text(scale)).append("</s:id><s:counter>41</s:counter>");
+		} else {
+			throw new IllegalArgumentException("Unknown operation " + operation);
+		}
+		return payload.append("</s:").append(operation).append(">").toString();
+	}
+
+	private static String text(int scale) {
+		StringBuilder text = new StringBuilder(scale * 24);
+		for (int i = 0; i < scale; i++) {
+			text.append("lorem ipsum dolor sit ");
+		}
+		return text.toString();
+	}
+}
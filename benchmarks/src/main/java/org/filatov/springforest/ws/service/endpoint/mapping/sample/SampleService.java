@@ -0,0 +1,37 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.sample;
+
+import java.util.List;
+
+import javax.jws.WebMethod;
+import javax.jws.WebParam;
+import javax.jws.WebResult;
+import javax.jws.WebService;
+import javax.xml.ws.Holder;
+import javax.xml.ws.RequestWrapper;
+import javax.xml.ws.ResponseWrapper;
+
+@WebService(targetNamespace = SampleService.NAMESPACE)
+public interface SampleService {
+
+	String NAMESPACE = "urn:springforest:benchmark";
+
+	/** Single {@code @WebParam} operation, the payload is the parameter. */
+	@WebMethod(action = NAMESPACE + "/ping")
+	PingResponse ping(@WebParam(partName = "ping", targetNamespace = NAMESPACE) Ping ping);
+
+	/** Multi-parameter {@code @RequestWrapper} operation. */
+	@WebMethod(action = NAMESPACE + "/submit")
+	@WebResult(name = "result", targetNamespace = NAMESPACE)
+	@RequestWrapper(localName = "submit", targetNamespace = NAMESPACE, className = "org.filatov.springforest.ws.service.endpoint.mapping.sample.Submit")
+	@ResponseWrapper(localName = "submitResponse", targetNamespace = NAMESPACE, className = "org.filatov.springforest.ws.service.endpoint.mapping.sample.SubmitResponse")
+	String submit(@WebParam(name = "customer", targetNamespace = NAMESPACE) String customer,
+			@WebParam(name = "item", targetNamespace = NAMESPACE) List<String> item);
+
+	/** Operation with {@code INOUT} and {@code OUT} {@link Holder}s. */
+	@WebMethod(action = NAMESPACE + "/exchange")
+	@RequestWrapper(localName = "exchange", targetNamespace = NAMESPACE, className = "org.filatov.springforest.ws.service.endpoint.mapping.sample.Exchange")
+	@ResponseWrapper(localName = "exchangeResponse", targetNamespace = NAMESPACE, className = "org.filatov.springforest.ws.service.endpoint.mapping.sample.ExchangeResponse")
+	void exchange(@WebParam(name = "id", targetNamespace = NAMESPACE) String id,
+			@WebParam(name = "counter", targetNamespace = NAMESPACE, mode = WebParam.Mode.INOUT) Holder<Integer> counter,
+			@WebParam(name = "status", targetNamespace = NAMESPACE, mode = WebParam.Mode.OUT) Holder<String> status);
+}
@@ -0,0 +1,32 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.sample;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement(name = "submit")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class Submit {
+
+	private String customer;
+
+	private List<String> item;
+
+	public String getCustomer() {
+		return customer;
+	}
+
+	public void setCustomer(String customer) {
+		this.customer = customer;
+	}
+
+	public List<String> getItem() {
+		if (null == item) {
+			item = new ArrayList<String>();
+		}
+		return item;
+	}
+}
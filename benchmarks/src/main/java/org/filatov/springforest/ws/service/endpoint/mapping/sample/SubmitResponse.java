@@ -0,0 +1,20 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.sample;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement(name = "submitResponse")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class SubmitResponse {
+
+	private String result;
+
+	public String getResult() {
+		return result;
+	}
+
+	public void setResult(String result) {
+		this.result = result;
+	}
+}
@@ -0,0 +1,8 @@
+/**
+ * Sample JAX-WS service used by the benchmarks.
+ */
+@XmlSchema(namespace = SampleService.NAMESPACE, elementFormDefault = XmlNsForm.QUALIFIED)
+package org.filatov.springforest.ws.service.endpoint.mapping.sample;
+
+import javax.xml.bind.annotation.XmlNsForm;
+import javax.xml.bind.annotation.XmlSchema;
@@ -0,0 +1,364 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.loadtest;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.filatov.springforest.ws.service.endpoint.mapping.JaxWsAnnotationMethodEndpointAdapter;
+import org.filatov.springforest.ws.service.endpoint.mapping.JaxWsAnnotationMethodEndpointMapping;
+import org.filatov.springforest.ws.service.endpoint.mapping.JaxWsAnnotationMethodPayloadProcessor;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.util.Assert;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.util.ObjectUtils;
+import org.springframework.ws.FaultAwareWebServiceMessage;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.context.DefaultMessageContext;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
+import org.springframework.ws.soap.server.SoapMessageDispatcher;
+
+/**
+ * Replays captured request payloads through a {@link SoapMessageDispatcher}
+ * wired with the {@link JaxWsAnnotationMethodEndpointMapping}, the
+ * {@link JaxWsAnnotationMethodEndpointAdapter} and the
+ * {@link JaxWsAnnotationMethodPayloadProcessor}, on a fixed number of local
+ * threads.
+ *
+ * <p>
+ * Every file of the payload directory is one request, either a whole SOAP 1.1
+ * envelope or a bare payload, which is wrapped into one. Each thread sends the
+ * payloads round robin, so every request parses its message and serializes its
+ * response like a server would, without the transport. Requests are sent back
+ * to back, or paced to the {@linkplain #setRate(double) target rate} shared by
+ * all threads. Paced latencies are measured from the time a request was due,
+ * so stalls are not hidden by requests which were sent late.
+ *
+ * <p>
+ * A warm-up period, whose requests are not recorded, precedes the
+ * measurement.
+ */
+public class LoadTest {
+
+	protected static final Log logger = LogFactory.getLog(LoadTest.class);
+
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	private static final Pattern ENVELOPE_PATTERN = Pattern.compile("^(<\\?xml[^>]*>)?\\s*<([\\w.-]+:)?Envelope\\b");
+
+	private File payloadDirectory;
+
+	private Class<?>[] configClasses = new Class<?>[0];
+
+	private String[] basePackages = new String[0];
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	private double rate = 0;
+
+	private long warmUpSeconds = 10;
+
+	private long durationSeconds = 30;
+
+	/**
+	 * Sets the directory holding the request payloads, one per file.
+	 */
+	public void setPayloadDirectory(File payloadDirectory) {
+		this.payloadDirectory = payloadDirectory;
+	}
+
+	/**
+	 * Sets the configuration classes declaring the endpoints and any other
+	 * beans of the tested context.
+	 */
+	public void setConfigClasses(Class<?>... configClasses) {
+		this.configClasses = configClasses;
+	}
+
+	/**
+	 * Sets the packages scanned for {@code @WebServiceEndpoint} classes and
+	 * other components of the tested context.
+	 */
+	public void setBasePackages(String... basePackages) {
+		this.basePackages = basePackages;
+	}
+
+	/**
+	 * Sets the number of threads sending requests. Defaults to the number of
+	 * available processors.
+	 */
+	public void setThreads(int threads) {
+		Assert.isTrue(threads > 0, "threads must be positive");
+		this.threads = threads;
+	}
+
+	/**
+	 * Sets the target rate of all threads together, in requests per second.
+	 * Defaults to {@code 0}, sending requests back to back.
+	 */
+	public void setRate(double rate) {
+		Assert.isTrue(rate >= 0, "rate must not be negative");
+		this.rate = rate;
+	}
+
+	/**
+	 * Sets the length of the warm-up in seconds. Defaults to {@code 10}.
+	 */
+	public void setWarmUpSeconds(long warmUpSeconds) {
+		this.warmUpSeconds = warmUpSeconds;
+	}
+
+	/**
+	 * Sets the length of the measurement in seconds. Defaults to {@code 30}.
+	 */
+	public void setDurationSeconds(long durationSeconds) {
+		Assert.isTrue(durationSeconds > 0, "durationSeconds must be positive");
+		this.durationSeconds = durationSeconds;
+	}
+
+	/**
+	 * Runs the warm-up and the measurement.
+	 *
+	 * @return the report of the measurement
+	 */
+	public LoadTestReport run() throws Exception {
+		byte[][] requests = loadRequests();
+		AnnotationConfigApplicationContext applicationContext = createApplicationContext();
+		try {
+			SaajSoapMessageFactory messageFactory = new SaajSoapMessageFactory();
+			messageFactory.afterPropertiesSet();
+			SoapMessageDispatcher messageDispatcher = new SoapMessageDispatcher();
+			messageDispatcher.setApplicationContext(applicationContext);
+
+			if (warmUpSeconds > 0) {
+				logger.info("Warming up for " + warmUpSeconds + " s");
+				runPhase(messageDispatcher, messageFactory, requests, warmUpSeconds);
+			}
+			logger.info("Measuring for " + durationSeconds + " s on " + threads + " threads"
+					+ (rate > 0 ? " at " + rate + " requests/s" : ""));
+			return runPhase(messageDispatcher, messageFactory, requests, durationSeconds);
+		} finally {
+			applicationContext.close();
+		}
+	}
+
+	private AnnotationConfigApplicationContext createApplicationContext() {
+		Assert.isTrue(configClasses.length > 0 || basePackages.length > 0,
+				"Either configClasses or basePackages must be set");
+		AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+		applicationContext.register(JaxWsAnnotationMethodEndpointMapping.class,
+				JaxWsAnnotationMethodEndpointAdapter.class, JaxWsAnnotationMethodPayloadProcessor.class);
+		if (configClasses.length > 0) {
+			applicationContext.register(configClasses);
+		}
+		if (basePackages.length > 0) {
+			applicationContext.scan(basePackages);
+		}
+		applicationContext.refresh();
+		return applicationContext;
+	}
+
+	private byte[][] loadRequests() throws IOException {
+		Assert.notNull(payloadDirectory, "payloadDirectory is required");
+		File[] files = payloadDirectory.listFiles();
+		Assert.isTrue(!ObjectUtils.isEmpty(files), "No payloads found in " + payloadDirectory);
+		Arrays.sort(files);
+		List<byte[]> requests = new ArrayList<byte[]>();
+		for (File file : files) {
+			if (file.isFile()) {
+				requests.add(toRequest(FileCopyUtils.copyToByteArray(file)));
+			}
+		}
+		Assert.isTrue(!requests.isEmpty(), "No payloads found in " + payloadDirectory);
+		logger.info("Loaded " + requests.size() + " payloads from " + payloadDirectory);
+		return requests.toArray(new byte[requests.size()][]);
+	}
+
+	private static byte[] toRequest(byte[] content) {
+		String text = new String(content, CHARSET).trim();
+		if (ENVELOPE_PATTERN.matcher(text).lookingAt()) {
+			return content;
+		}
+		if (text.startsWith("<?xml")) {
+			text = text.substring(text.indexOf("?>") + 2);
+		}
+		return ("<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>"
+				+ text + "</soapenv:Body></soapenv:Envelope>").getBytes(CHARSET);
+	}
+
+	private LoadTestReport runPhase(SoapMessageDispatcher messageDispatcher, SaajSoapMessageFactory messageFactory,
+			byte[][] requests, long seconds) throws InterruptedException {
+		long start = System.nanoTime();
+		long end = start + TimeUnit.SECONDS.toNanos(seconds);
+		long interval = rate > 0 ? (long) (threads * 1e9 / rate) : 0;
+		CountDownLatch done = new CountDownLatch(threads);
+		Worker[] workers = new Worker[threads];
+		for (int i = 0; i < threads; i++) {
+			// Offset the schedules, so paced threads do not send in bursts
+			long first = start + (0 != interval ? interval * i / threads : 0);
+			workers[i] = new Worker(messageDispatcher, messageFactory, requests, i, first, end, interval, done);
+			Thread thread = new Thread(workers[i], "loadtest-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		done.await();
+		long elapsed = System.nanoTime() - start;
+
+		int count = 0;
+		for (Worker worker : workers) {
+			count += worker.count;
+		}
+		long[] latencies = new long[count];
+		int offset = 0;
+		long errors = 0;
+		long allocatedBytes = 0;
+		for (Worker worker : workers) {
+			System.arraycopy(worker.latencies, 0, latencies, offset, worker.count);
+			offset += worker.count;
+			errors += worker.errors;
+			allocatedBytes = allocatedBytes < 0 || worker.allocatedBytes < 0 ? -1
+					: allocatedBytes + worker.allocatedBytes;
+		}
+		return new LoadTestReport(threads, elapsed, latencies, errors, allocatedBytes);
+	}
+
+	/**
+	 * Sends requests until the end of a phase, recording their latencies and
+	 * the bytes allocated by its thread.
+	 */
+	private static final class Worker implements Runnable {
+
+		private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+		private final SoapMessageDispatcher messageDispatcher;
+
+		private final SaajSoapMessageFactory messageFactory;
+
+		private final byte[][] requests;
+
+		private final long end;
+
+		private final long interval;
+
+		private final CountDownLatch done;
+
+		private int next;
+
+		private long due;
+
+		long[] latencies = new long[1024];
+
+		int count;
+
+		long errors;
+
+		long allocatedBytes = -1;
+
+		Worker(SoapMessageDispatcher messageDispatcher, SaajSoapMessageFactory messageFactory, byte[][] requests,
+				int index, long first, long end, long interval, CountDownLatch done) {
+			this.messageDispatcher = messageDispatcher;
+			this.messageFactory = messageFactory;
+			this.requests = requests;
+			this.next = index % requests.length;
+			this.due = first;
+			this.end = end;
+			this.interval = interval;
+			this.done = done;
+		}
+
+		public void run() {
+			try {
+				long threadId = Thread.currentThread().getId();
+				long allocatedBefore = getAllocatedBytes(threadId);
+				for (long now = System.nanoTime(); now < end; now = System.nanoTime()) {
+					long start = now;
+					if (0 != interval) {
+						if (due > now) {
+							LockSupport.parkNanos(due - now);
+							continue;
+						}
+						start = due;
+						due += interval;
+					}
+					boolean success = send(requests[next]);
+					next = (next + 1) % requests.length;
+					record(System.nanoTime() - start, success);
+				}
+				long allocatedAfter = getAllocatedBytes(threadId);
+				if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+					allocatedBytes = allocatedAfter - allocatedBefore;
+				}
+			} finally {
+				done.countDown();
+			}
+		}
+
+		private boolean send(byte[] request) {
+			try {
+				WebServiceMessage message = messageFactory
+						.createWebServiceMessage(new ByteArrayInputStream(request));
+				MessageContext messageContext = new DefaultMessageContext(message, messageFactory);
+				messageDispatcher.receive(messageContext);
+				if (!messageContext.hasResponse()) {
+					return true;
+				}
+				WebServiceMessage response = messageContext.getResponse();
+				response.writeTo(DiscardingOutputStream.INSTANCE);
+				return !(response instanceof FaultAwareWebServiceMessage
+						&& ((FaultAwareWebServiceMessage) response).hasFault());
+			} catch (Exception ex) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Request failed", ex);
+				}
+				return false;
+			}
+		}
+
+		private void record(long latency, boolean success) {
+			if (count == latencies.length) {
+				latencies = Arrays.copyOf(latencies, count * 2);
+			}
+			latencies[count++] = latency;
+			if (!success) {
+				errors++;
+			}
+		}
+
+		private static long getAllocatedBytes(long threadId) {
+			if (threadBean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+				if (allocationBean.isThreadAllocatedMemorySupported()
+						&& allocationBean.isThreadAllocatedMemoryEnabled()) {
+					return allocationBean.getThreadAllocatedBytes(threadId);
+				}
+			}
+			return -1;
+		}
+	}
+
+	private static final class DiscardingOutputStream extends OutputStream {
+
+		static final DiscardingOutputStream INSTANCE = new DiscardingOutputStream();
+
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Results of a {@link LoadTest} measurement: throughput, exact latency
+ * percentiles and the bytes allocated per request by the sending threads.
+ */
+public class LoadTestReport {
+
+	private final int threads;
+
+	private final long elapsedNanos;
+
+	private final long[] latencies;
+
+	private final long errorCount;
+
+	private final long allocatedBytes;
+
+	LoadTestReport(int threads, long elapsedNanos, long[] latencies, long errorCount, long allocatedBytes) {
+		this.threads = threads;
+		this.elapsedNanos = elapsedNanos;
+		this.latencies = latencies;
+		this.errorCount = errorCount;
+		this.allocatedBytes = allocatedBytes;
+		Arrays.sort(latencies);
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public long getRequestCount() {
+		return latencies.length;
+	}
+
+	/**
+	 * Returns the number of requests which failed or were answered with a
+	 * fault.
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	/**
+	 * Returns the number of requests per second.
+	 */
+	public double getThroughput() {
+		return 0 != elapsedNanos ? latencies.length * 1e9 / elapsedNanos : 0;
+	}
+
+	/**
+	 * Returns the latency at the given percentile in nanoseconds.
+	 *
+	 * @param percentile
+	 *            the percentile, between {@code 0} and {@code 1}
+	 */
+	public long getLatency(double percentile) {
+		if (0 == latencies.length) {
+			return 0;
+		}
+		int rank = (int) Math.ceil(percentile * latencies.length);
+		return latencies[Math.max(0, Math.min(latencies.length, rank) - 1)];
+	}
+
+	/**
+	 * Returns the bytes allocated per request, or {@code -1} if the JVM does
+	 * not measure thread allocation.
+	 */
+	public long getAllocatedBytesPerRequest() {
+		if (allocatedBytes < 0 || 0 == latencies.length) {
+			return -1;
+		}
+		return allocatedBytes / latencies.length;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("Threads:      %d%n", threads));
+		report.append(String.format("Requests:     %d (%d errors) in %.1f s%n", getRequestCount(), errorCount,
+				elapsedNanos / 1e9));
+		report.append(String.format("Throughput:   %.1f requests/s%n", getThroughput()));
+		report.append(String.format("Latency (us): p50=%d p90=%d p99=%d p99.9=%d max=%d%n", micros(0.5),
+				micros(0.9), micros(0.99), micros(0.999), micros(1)));
+		long allocated = getAllocatedBytesPerRequest();
+		report.append(String.format("Allocation:   %s%n", allocated >= 0 ? allocated + " bytes/request" : "n/a"));
+		return report.toString();
+	}
+
+	private long micros(double percentile) {
+		return TimeUnit.NANOSECONDS.toMicros(getLatency(percentile));
+	}
+}
@@ -0,0 +1,66 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.loadtest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Runs a {@link LoadTest} from the command line and prints its report. The
+ * endpoints and their classes must be on the class path.
+ *
+ * <pre>
+ * java -cp loadtest.jar:endpoints.jar org.filatov.springforest.ws.service.endpoint.mapping.loadtest.LoadTestRunner \
+ *     --payloads requests/ --scan com.example.ws [--config com.example.WsConfig] \
+ *     [--threads 8] [--rate 5000] [--warmup 10] [--duration 30]
+ * </pre>
+ */
+public class LoadTestRunner {
+
+	public static void main(String[] args) throws Exception {
+		LoadTest loadTest = new LoadTest();
+		List<Class<?>> configClasses = new ArrayList<Class<?>>();
+		List<String> basePackages = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (i + 1 == args.length) {
+				usage("Missing value of " + option);
+			}
+			String value = args[++i];
+			if ("--payloads".equals(option)) {
+				loadTest.setPayloadDirectory(new File(value));
+			} else if ("--config".equals(option)) {
+				for (String className : StringUtils.commaDelimitedListToStringArray(value)) {
+					configClasses.add(ClassUtils.forName(className.trim(), LoadTestRunner.class.getClassLoader()));
+				}
+			} else if ("--scan".equals(option)) {
+				basePackages.addAll(StringUtils.commaDelimitedListToSet(value));
+			} else if ("--threads".equals(option)) {
+				loadTest.setThreads(Integer.parseInt(value));
+			} else if ("--rate".equals(option)) {
+				loadTest.setRate(Double.parseDouble(value));
+			} else if ("--warmup".equals(option)) {
+				loadTest.setWarmUpSeconds(Long.parseLong(value));
+			} else if ("--duration".equals(option)) {
+				loadTest.setDurationSeconds(Long.parseLong(value));
+			} else {
+				usage("Unknown option " + option);
+			}
+		}
+		if (configClasses.isEmpty() && basePackages.isEmpty()) {
+			usage("Either --config or --scan is required");
+		}
+		loadTest.setConfigClasses(configClasses.toArray(new Class<?>[configClasses.size()]));
+		loadTest.setBasePackages(basePackages.toArray(new String[basePackages.size()]));
+		System.out.print(loadTest.run());
+	}
+
+	private static void usage(String message) {
+		System.err.println(message);
+		System.err.println("Usage: LoadTestRunner --payloads <dir> (--scan <packages> | --config <classes>)"
+				+ " [--threads <n>] [--rate <requests/s>] [--warmup <s>] [--duration <s>]");
+		System.exit(1);
+	}
+}
@@ -0,0 +1,84 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * {@link DispatchMetrics} publishing to a Micrometer {@link MeterRegistry}.
+ *
+ * <p>
+ * Phase durations are recorded by the {@code springforest.ws.dispatch} timer
+ * tagged with {@code operation}, {@code phase} and {@code outcome}, request
+ * sizes by the {@code springforest.ws.request.size} summary tagged with
+ * {@code operation}. Meters are registered once and then looked up from a
+ * local cache.
+ */
+public class MicrometerDispatchMetrics implements DispatchMetrics {
+
+	public static final String DISPATCH_TIMER = "springforest.ws.dispatch";
+
+	public static final String REQUEST_SIZE_SUMMARY = "springforest.ws.request.size";
+
+	private final MeterRegistry registry;
+
+	private final ConcurrentMap<QName, Meters> meters = new ConcurrentHashMap<QName, Meters>();
+
+	public MicrometerDispatchMetrics(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	public void recordPhase(QName operation, DispatchPhase phase, long durationNanos, boolean success) {
+		getMeters(operation).timer(phase, success).record(durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void recordRequestSize(QName operation, long bytes) {
+		getMeters(operation).requestSize.record(bytes);
+	}
+
+	private Meters getMeters(QName operation) {
+		Meters operationMeters = meters.get(operation);
+		if (null == operationMeters) {
+			operationMeters = new Meters(operation);
+			Meters existing = meters.putIfAbsent(operation, operationMeters);
+			if (null != existing) {
+				operationMeters = existing;
+			}
+		}
+		return operationMeters;
+	}
+
+	private final class Meters {
+
+		final Timer[] successTimers;
+		final Timer[] errorTimers;
+		final DistributionSummary requestSize;
+
+		Meters(QName operation) {
+			DispatchPhase[] phases = DispatchPhase.values();
+			this.successTimers = new Timer[phases.length];
+			this.errorTimers = new Timer[phases.length];
+			for (int i = 0; i < phases.length; i++) {
+				successTimers[i] = timer(operation, phases[i], "success");
+				errorTimers[i] = timer(operation, phases[i], "error");
+			}
+			this.requestSize = DistributionSummary.builder(REQUEST_SIZE_SUMMARY).baseUnit("bytes")
+					.tag("operation", operation.toString()).register(registry);
+		}
+
+		private Timer timer(QName operation, DispatchPhase phase, String outcome) {
+			return Timer.builder(DISPATCH_TIMER).tag("operation", operation.toString())
+					.tag("phase", phase.name().toLowerCase()).tag("outcome", outcome).register(registry);
+		}
+
+		Timer timer(DispatchPhase phase, boolean success) {
+			return success ? successTimers[phase.ordinal()] : errorTimers[phase.ordinal()];
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package org.filatov.springforest.ws.service.endpoint.mapping;
+
+import javax.xml.namespace.QName;
+
+import org.springframework.ws.WebServiceException;
+import org.springframework.ws.soap.server.endpoint.annotation.FaultCode;
+import org.springframework.ws.soap.server.endpoint.annotation.SoapFault;
+
+/**
+ * Thrown when the payload root of a request looked up by its action is not the
+ * operation element of the action. Resolved to a {@code Client} fault.
+ *
+ * @see JaxWsAnnotationMethodEndpointMapping#setUseActionLookup(boolean)
+ */
+@SoapFault(faultCode = FaultCode.CLIENT)
+public class ActionMismatchException extends WebServiceException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final QName operation;
+
+	private final QName payloadRoot;
+
+	public ActionMismatchException(QName operation, QName payloadRoot) {
+		super("Payload root " + payloadRoot + " does not match the operation " + operation
+				+ " of the request action");
+		this.operation = operation;
+		this.payloadRoot = payloadRoot;
+	}
+
+	/**
+	 * Returns the name of the operation the request was looked up by.
+	 */
+	public QName getOperation() {
+		return operation;
+	}
+
+	/**
+	 * Returns the name of the payload root element of the request.
+	 */
+	public QName getPayloadRoot() {
+		return payloadRoot;
+	}
+}
@@ -1,23 +1,62 @@
 package org.filatov.springforest.ws.service.endpoint.mapping;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
 
+import javax.jws.WebService;
+import javax.xml.bind.JAXBException;
+import javax.xml.namespace.QName;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Source;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.ws.RequestWrapper;
+
+import org.filatov.springforest.ws.service.endpoint.mapping.cache.CacheableResponse;
+import org.filatov.springforest.ws.service.endpoint.mapping.cache.InMemoryResponseCache;
+import org.filatov.springforest.ws.service.endpoint.mapping.cache.PayloadDigester;
+import org.filatov.springforest.ws.service.endpoint.mapping.cache.ResponseCache;
+import org.filatov.springforest.ws.service.endpoint.mapping.cache.ResponseCacheKey;
+import org.filatov.springforest.ws.service.endpoint.mapping.fault.WebFaultMapping;
+import org.filatov.springforest.ws.service.endpoint.mapping.jfr.DispatchEvents;
+import org.filatov.springforest.ws.service.endpoint.mapping.limit.ConcurrencyLimitExceededException;
+import org.filatov.springforest.ws.service.endpoint.mapping.limit.ConcurrencyLimiter;
+import org.filatov.springforest.ws.service.endpoint.mapping.limit.OperationLimit;
+import org.filatov.springforest.ws.service.endpoint.mapping.metrics.DispatchMetrics;
+import org.filatov.springforest.ws.service.endpoint.mapping.metrics.DispatchPhase;
+import org.filatov.springforest.ws.service.endpoint.mapping.util.JaxWsAnnotationHelper;
+import org.filatov.springforest.ws.service.endpoint.mapping.warmup.JaxWsEndpointWarmer;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.BeanClassLoaderAware;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.MethodParameter;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.ws.FaultAwareWebServiceMessage;
+import org.springframework.ws.WebServiceMessage;
 import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.mime.MimeMessage;
 import org.springframework.ws.server.endpoint.MethodEndpoint;
 import org.springframework.ws.server.endpoint.adapter.AbstractMethodEndpointAdapter;
 import org.springframework.ws.server.endpoint.adapter.method.MethodArgumentResolver;
 import org.springframework.ws.server.endpoint.adapter.method.MethodReturnValueHandler;
 import org.springframework.ws.server.endpoint.adapter.method.jaxb.JaxbElementPayloadMethodProcessor;
-import org.springframework.ws.server.endpoint.adapter.method.jaxb.XmlRootElementPayloadMethodProcessor;
+import org.springframework.ws.soap.SoapBody;
+import org.springframework.ws.soap.SoapFault;
+import org.springframework.ws.soap.SoapMessage;
+import org.springframework.xml.transform.TransformerHelper;
 
 @Component
 public class JaxWsAnnotationMethodEndpointAdapter extends AbstractMethodEndpointAdapter
@@ -31,6 +70,30 @@ public class JaxWsAnnotationMethodEndpointAdapter extends AbstractMethodEndpoint
 
 	private ClassLoader classLoader;
 
+	private int jaxbPoolSize = JaxbPooledPayloadMethodProcessor.DEFAULT_POOL_SIZE;
+
+	private boolean mtomEnabled = false;
+
+	private boolean webFaultsEnabled = false;
+
+	private Resource[] schemaLocations;
+
+	private JaxbPooledPayloadMethodProcessor jaxbPayloadMethodProcessor;
+
+	private DispatchMetrics dispatchMetrics;
+
+	private ResponseCache responseCache = new InMemoryResponseCache();
+
+	private ConcurrencyLimiter concurrencyLimiter;
+
+	private final PayloadDigester payloadDigester = new PayloadDigester();
+
+	private final TransformerHelper transformerHelper = new TransformerHelper();
+
+	private final ConcurrentMap<MethodEndpoint, MethodEndpointStrategies> endpointStrategies = new ConcurrentHashMap<MethodEndpoint, MethodEndpointStrategies>();
+
+	private final ConcurrentMap<MethodEndpoint, WebFaultMapping[]> webFaultMappings = new ConcurrentHashMap<MethodEndpoint, WebFaultMapping[]>();
+
 	/**
 	 * Returns the list of {@code MethodArgumentResolver}s to use.
 	 */
@@ -43,6 +106,7 @@ public class JaxWsAnnotationMethodEndpointAdapter extends AbstractMethodEndpoint
 	 */
 	public void setMethodArgumentResolvers(List<MethodArgumentResolver> methodArgumentResolvers) {
 		this.methodArgumentResolvers = methodArgumentResolvers;
+		endpointStrategies.clear();
 	}
 
 	/**
@@ -57,6 +121,101 @@ public class JaxWsAnnotationMethodEndpointAdapter extends AbstractMethodEndpoint
 	 */
 	public void setMethodReturnValueHandlers(List<MethodReturnValueHandler> methodReturnValueHandlers) {
 		this.methodReturnValueHandlers = methodReturnValueHandlers;
+		endpointStrategies.clear();
+	}
+
+	/**
+	 * Returns the maximum number of pooled JAXB marshallers and unmarshallers
+	 * per type used by the default strategies.
+	 */
+	public int getJaxbPoolSize() {
+		return jaxbPoolSize;
+	}
+
+	/**
+	 * Sets the maximum number of pooled JAXB marshallers and unmarshallers per
+	 * type used by the default strategies. Defaults to
+	 * {@link JaxbPooledPayloadMethodProcessor#DEFAULT_POOL_SIZE}.
+	 */
+	public void setJaxbPoolSize(int jaxbPoolSize) {
+		this.jaxbPoolSize = jaxbPoolSize;
+	}
+
+	/**
+	 * Returns {@code true} if the default strategies write binary content of
+	 * responses as MTOM attachments.
+	 */
+	public boolean isMtomEnabled() {
+		return mtomEnabled;
+	}
+
+	/**
+	 * Sets whether the default strategies write binary content of responses as
+	 * MTOM attachments. Defaults to {@code false}.
+	 */
+	public void setMtomEnabled(boolean mtomEnabled) {
+		this.mtomEnabled = mtomEnabled;
+		if (null != jaxbPayloadMethodProcessor) {
+			jaxbPayloadMethodProcessor.setMtomEnabled(mtomEnabled);
+		}
+	}
+
+	/**
+	 * Returns {@code true} if {@code @WebFault} exceptions declared by the
+	 * endpoint methods are written as SOAP faults by the adapter.
+	 */
+	public boolean isWebFaultsEnabled() {
+		return webFaultsEnabled;
+	}
+
+	/**
+	 * Sets whether {@code @WebFault} exceptions declared by the endpoint
+	 * methods are written as {@code Server} SOAP faults by the adapter, with
+	 * their fault bean as detail, instead of being left to the endpoint
+	 * exception resolvers. Defaults to {@code false}.
+	 */
+	public void setWebFaultsEnabled(boolean webFaultsEnabled) {
+		this.webFaultsEnabled = webFaultsEnabled;
+	}
+
+	/**
+	 * Returns the locations of the schemas the default strategies validate
+	 * payloads against, or {@code null} if schemas are generated from the
+	 * JAXB metadata.
+	 */
+	public Resource[] getSchemaLocations() {
+		return schemaLocations;
+	}
+
+	/**
+	 * Sets the locations of the XSD schemas the default strategies validate
+	 * {@code @ValidatePayload} operation payloads against. By default, schemas
+	 * are generated from the JAXB metadata of the payload types.
+	 */
+	public void setSchemaLocations(Resource... schemaLocations) {
+		this.schemaLocations = schemaLocations;
+		if (null != jaxbPayloadMethodProcessor) {
+			jaxbPayloadMethodProcessor.setSchemaLocations(schemaLocations);
+		}
+	}
+
+	/**
+	 * Returns the metrics receiving the phase timings, or {@code null} if they
+	 * are not recorded.
+	 */
+	public DispatchMetrics getDispatchMetrics() {
+		return dispatchMetrics;
+	}
+
+	/**
+	 * Sets the metrics receiving the timings of the unwrap, invoke and wrap
+	 * phases. Not set by default, unless a {@link DispatchMetrics} bean is
+	 * present. {@linkplain JaxWsEndpointWarmer Warm-up} requests are not
+	 * recorded.
+	 */
+	@Autowired(required = false)
+	public void setDispatchMetrics(DispatchMetrics dispatchMetrics) {
+		this.dispatchMetrics = dispatchMetrics;
 	}
 
 	private ClassLoader getClassLoader() {
@@ -67,6 +226,46 @@ public class JaxWsAnnotationMethodEndpointAdapter extends AbstractMethodEndpoint
 		this.classLoader = classLoader;
 	}
 
+	/**
+	 * Returns the cache of {@link CacheableResponse} operation responses, or
+	 * {@code null} if responses are not cached.
+	 */
+	public ResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+	/**
+	 * Sets the cache of {@link CacheableResponse} operation responses.
+	 * Defaults to an {@link InMemoryResponseCache}, unless a
+	 * {@link ResponseCache} bean is present; {@code null} disables caching.
+	 * {@linkplain JaxWsEndpointWarmer Warm-up} requests bypass the cache.
+	 */
+	@Autowired(required = false)
+	public void setResponseCache(ResponseCache responseCache) {
+		this.responseCache = responseCache;
+	}
+
+	/**
+	 * Returns the limiter of concurrent calls per operation, or {@code null}
+	 * if calls are not limited.
+	 */
+	public ConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+
+	/**
+	 * Sets the limiter of concurrent calls per operation. Calls over the limit
+	 * of their operation are rejected with a
+	 * {@link ConcurrencyLimitExceededException} before their arguments are
+	 * resolved. Not set by default, unless a {@link ConcurrencyLimiter} bean is
+	 * present. {@linkplain JaxWsEndpointWarmer Warm-up} requests are not
+	 * limited and do not adapt the limits.
+	 */
+	@Autowired(required = false)
+	public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+		this.concurrencyLimiter = concurrencyLimiter;
+	}
+
 	public void afterPropertiesSet() throws Exception {
 		initDefaultStrategies();
 	}
@@ -80,7 +279,7 @@ public class JaxWsAnnotationMethodEndpointAdapter extends AbstractMethodEndpoint
 	private void initMethodArgumentResolvers() {
 		if (CollectionUtils.isEmpty(methodArgumentResolvers)) {
 			List<MethodArgumentResolver> methodArgumentResolvers = new ArrayList<MethodArgumentResolver>();
-			methodArgumentResolvers.add(new XmlRootElementPayloadMethodProcessor());
+			methodArgumentResolvers.add(getJaxbPayloadMethodProcessor());
 			methodArgumentResolvers.add(new JaxbElementPayloadMethodProcessor());
 			setMethodArgumentResolvers(methodArgumentResolvers);
 		}
@@ -105,78 +304,350 @@ public class JaxWsAnnotationMethodEndpointAdapter extends AbstractMethodEndpoint
 	private void initMethodReturnValueHandlers() {
 		if (CollectionUtils.isEmpty(methodReturnValueHandlers)) {
 			List<MethodReturnValueHandler> methodReturnValueHandlers = new ArrayList<MethodReturnValueHandler>();
-			methodReturnValueHandlers.add(new XmlRootElementPayloadMethodProcessor());
+			methodReturnValueHandlers.add(getJaxbPayloadMethodProcessor());
 			methodReturnValueHandlers.add(new JaxbElementPayloadMethodProcessor());
 			setMethodReturnValueHandlers(methodReturnValueHandlers);
 		}
 	}
 
+	/**
+	 * Returns the pooled JAXB processor shared by the default argument
+	 * resolvers and return value handlers.
+	 */
+	private JaxbPooledPayloadMethodProcessor getJaxbPayloadMethodProcessor() {
+		if (null == jaxbPayloadMethodProcessor) {
+			jaxbPayloadMethodProcessor = new JaxbPooledPayloadMethodProcessor(jaxbPoolSize);
+			jaxbPayloadMethodProcessor.setMtomEnabled(mtomEnabled);
+			jaxbPayloadMethodProcessor.setSchemaLocations(schemaLocations);
+		}
+		return jaxbPayloadMethodProcessor;
+	}
+
 	private boolean isPresent(String className) {
 		return ClassUtils.isPresent(className, getClassLoader());
 	}
 
 	@Override
 	protected boolean supportsInternal(MethodEndpoint methodEndpoint) {
-		return supportsParameters(methodEndpoint.getMethodParameters())
-				&& supportsReturnType(methodEndpoint.getReturnType());
+		return getStrategies(methodEndpoint).isSupported();
 	}
 
-	private boolean supportsParameters(MethodParameter[] methodParameters) {
-		for (MethodParameter methodParameter : methodParameters) {
-			boolean supported = false;
-			for (MethodArgumentResolver methodArgumentResolver : methodArgumentResolvers) {
-				if (logger.isTraceEnabled()) {
-					logger.trace("Testing if argument resolver [" + methodArgumentResolver + "] supports ["
-							+ methodParameter.getGenericParameterType() + "]");
-				}
-				if (methodArgumentResolver.supportsParameter(methodParameter)) {
-					supported = true;
-					break;
-				}
+	/**
+	 * Returns the first {@code MethodArgumentResolver} supporting the given
+	 * parameter, or {@code null} if none does.
+	 */
+	protected MethodArgumentResolver findMethodArgumentResolver(MethodParameter methodParameter) {
+		for (MethodArgumentResolver methodArgumentResolver : methodArgumentResolvers) {
+			if (logger.isTraceEnabled()) {
+				logger.trace("Testing if argument resolver [" + methodArgumentResolver + "] supports ["
+						+ methodParameter.getGenericParameterType() + "]");
 			}
-			if (!supported) {
-				return false;
+			if (methodArgumentResolver.supportsParameter(methodParameter)) {
+				return methodArgumentResolver;
 			}
 		}
-		return true;
+		return null;
 	}
 
-	private boolean supportsReturnType(MethodParameter methodReturnType) {
-		if (Void.TYPE.equals(methodReturnType.getParameterType())) {
-			return true;
-		}
+	/**
+	 * Returns the first {@code MethodReturnValueHandler} supporting the given
+	 * return type, or {@code null} if none does.
+	 */
+	protected MethodReturnValueHandler findMethodReturnValueHandler(MethodParameter methodReturnType) {
 		for (MethodReturnValueHandler methodReturnValueHandler : methodReturnValueHandlers) {
 			if (methodReturnValueHandler.supportsReturnType(methodReturnType)) {
-				return true;
+				return methodReturnValueHandler;
+			}
+		}
+		return null;
+	}
+
+	private MethodEndpointStrategies getStrategies(MethodEndpoint methodEndpoint) {
+		MethodEndpointStrategies strategies = endpointStrategies.get(methodEndpoint);
+		if (null == strategies) {
+			strategies = new MethodEndpointStrategies(methodEndpoint);
+			MethodEndpointStrategies existing = endpointStrategies.putIfAbsent(methodEndpoint, strategies);
+			if (null != existing) {
+				strategies = existing;
 			}
 		}
-		return false;
+		return strategies;
 	}
 
 	@Override
 	protected final void invokeInternal(MessageContext messageContext, MethodEndpoint methodEndpoint) throws Exception {
-		Object[] args = getMethodArguments(messageContext, methodEndpoint);
+		ResponseCache responseCache = this.responseCache;
+		if (null != responseCache) {
+			CacheableResponse cacheableResponse = JaxWsAnnotationHelper.getMethodAnnotation(methodEndpoint.getMethod(),
+					CacheableResponse.class);
+			if (null != cacheableResponse) {
+				if (!messageContext.containsProperty(JaxWsEndpointWarmer.WARM_UP_PROPERTY)) {
+					invokeCached(messageContext, methodEndpoint, responseCache, cacheableResponse);
+					return;
+				}
+			}
+		}
+		dispatch(messageContext, methodEndpoint);
+	}
+
+	/**
+	 * Serves the response payload from the cache, or dispatches the request
+	 * and caches the response payload.
+	 */
+	private void invokeCached(MessageContext messageContext, MethodEndpoint methodEndpoint,
+			ResponseCache responseCache, CacheableResponse cacheableResponse) throws Exception {
+		ResponseCacheKey key = payloadDigester.createKey(messageContext.getRequest().getPayloadSource());
+		if (null == key) {
+			dispatch(messageContext, methodEndpoint);
+			return;
+		}
+		byte[] payload = responseCache.get(key);
+		if (null != payload) {
+			if (logger.isTraceEnabled()) {
+				logger.trace("Serving cached response of [" + methodEndpoint + "] for " + key);
+			}
+			transformerHelper.transform(new StreamSource(new ByteArrayInputStream(payload)),
+					messageContext.getResponse().getPayloadResult());
+			return;
+		}
+		dispatch(messageContext, methodEndpoint);
+		if (messageContext.hasResponse() && isCacheable(messageContext.getResponse())) {
+			Source responsePayload = messageContext.getResponse().getPayloadSource();
+			if (null != responsePayload) {
+				ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+				Transformer transformer = transformerHelper.createTransformer();
+				transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+				transformer.transform(responsePayload, new StreamResult(outputStream));
+				responseCache.put(key, outputStream.toByteArray(), cacheableResponse.timeToLive());
+			}
+		}
+	}
+
+	private static boolean isCacheable(WebServiceMessage response) {
+		if (response instanceof FaultAwareWebServiceMessage && ((FaultAwareWebServiceMessage) response).hasFault()) {
+			return false;
+		}
+		return !(response instanceof MimeMessage && ((MimeMessage) response).getAttachments().hasNext());
+	}
+
+	private void dispatch(MessageContext messageContext, MethodEndpoint methodEndpoint) throws Exception {
+		try {
+			ConcurrencyLimiter concurrencyLimiter = this.concurrencyLimiter;
+			if (null != concurrencyLimiter && !messageContext.containsProperty(JaxWsEndpointWarmer.WARM_UP_PROPERTY)) {
+				invokeLimited(messageContext, methodEndpoint, concurrencyLimiter);
+				return;
+			}
+			dispatchUnlimited(messageContext, methodEndpoint);
+		} catch (Exception ex) {
+			if (!webFaultsEnabled || !handleWebFault(messageContext, methodEndpoint, ex)) {
+				throw ex;
+			}
+		}
+	}
+
+	/**
+	 * Writes the SOAP fault of a {@code @WebFault} exception declared by the
+	 * endpoint method, bypassing the endpoint exception resolvers.
+	 *
+	 * @return {@code true} if the exception was written as a fault
+	 */
+	private boolean handleWebFault(MessageContext messageContext, MethodEndpoint methodEndpoint, Exception ex)
+			throws Exception {
+		WebFaultMapping mapping = findWebFaultMapping(getWebFaultMappings(methodEndpoint), ex);
+		if (null == mapping) {
+			return false;
+		}
+		WebServiceMessage response = messageContext.getResponse();
+		if (!(response instanceof SoapMessage)) {
+			return false;
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Endpoint [" + methodEndpoint + "] threw " + ex.getClass().getName()
+					+ ", writing fault " + mapping);
+		}
+		SoapBody body = ((SoapMessage) response).getSoapBody();
+		SoapFault fault = body.addServerOrReceiverFault(mapping.getFaultString(ex), Locale.ENGLISH);
+		Object faultDetail = mapping.getFaultDetail(ex);
+		if (null != faultDetail) {
+			getJaxbPayloadMethodProcessor().marshal(faultDetail, mapping.getFaultBeanType(),
+					fault.addFaultDetail().getResult());
+		}
+		return true;
+	}
+
+	private static WebFaultMapping findWebFaultMapping(WebFaultMapping[] mappings, Exception ex) {
+		WebFaultMapping assignable = null;
+		for (WebFaultMapping mapping : mappings) {
+			if (mapping.getExceptionType() == ex.getClass()) {
+				return mapping;
+			}
+			if (null == assignable && mapping.getExceptionType().isInstance(ex)) {
+				assignable = mapping;
+			}
+		}
+		return assignable;
+	}
+
+	/**
+	 * Returns the fault mappings of the {@code @WebFault} exceptions declared
+	 * by the given method endpoint, resolving them and creating the JAXB
+	 * contexts of their fault beans on first use.
+	 */
+	protected WebFaultMapping[] getWebFaultMappings(MethodEndpoint methodEndpoint) {
+		WebFaultMapping[] mappings = webFaultMappings.get(methodEndpoint);
+		if (null == mappings) {
+			mappings = createWebFaultMappings(methodEndpoint);
+			WebFaultMapping[] existing = webFaultMappings.putIfAbsent(methodEndpoint, mappings);
+			if (null != existing) {
+				mappings = existing;
+			}
+		}
+		return mappings;
+	}
+
+	private WebFaultMapping[] createWebFaultMappings(MethodEndpoint methodEndpoint) {
+		String defaultNamespace = getDefaultFaultNamespace(methodEndpoint);
+		List<WebFaultMapping> mappings = new ArrayList<WebFaultMapping>();
+		for (Class<?> exceptionType : methodEndpoint.getMethod().getExceptionTypes()) {
+			WebFaultMapping mapping = WebFaultMapping.forExceptionType(exceptionType, defaultNamespace);
+			if (null == mapping) {
+				continue;
+			}
+			try {
+				getJaxbPayloadMethodProcessor().getJaxbContext(mapping.getFaultBeanType());
+				mappings.add(mapping);
+			} catch (JAXBException ex) {
+				logger.error("Could not create JAXBContext for fault bean of " + exceptionType
+						+ ", it is left to the endpoint exception resolvers", ex);
+			}
+		}
+		return mappings.toArray(new WebFaultMapping[mappings.size()]);
+	}
+
+	private static String getDefaultFaultNamespace(MethodEndpoint methodEndpoint) {
+		RequestWrapper requestWrapper = JaxWsAnnotationHelper.getMethodAnnotation(methodEndpoint.getMethod(),
+				RequestWrapper.class);
+		if (null != requestWrapper && StringUtils.hasLength(requestWrapper.targetNamespace())) {
+			return requestWrapper.targetNamespace();
+		}
+		WebService webService = JaxWsAnnotationHelper.getAnnotation(methodEndpoint.getMethod().getDeclaringClass(),
+				WebService.class);
+		return null != webService ? webService.targetNamespace() : "";
+	}
 
-		if (logger.isTraceEnabled()) {
-			logger.trace("Invoking [" + methodEndpoint + "] with arguments " + Arrays.asList(args));
+	private void invokeLimited(MessageContext messageContext, MethodEndpoint methodEndpoint,
+			ConcurrencyLimiter concurrencyLimiter) throws Exception {
+		QName operationName = getOperationName(messageContext, methodEndpoint);
+		OperationLimit limit = concurrencyLimiter.getOperationLimit(operationName);
+		if (!limit.tryAcquire()) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Rejecting call of [" + methodEndpoint + "], limit " + limit.getLimit() + " reached");
+			}
+			throw new ConcurrencyLimitExceededException(operationName, limit.getLimit());
+		}
+		boolean dropped = false;
+		long start = System.nanoTime();
+		try {
+			dispatchUnlimited(messageContext, methodEndpoint);
+		} catch (TimeoutException ex) {
+			dropped = true;
+			throw ex;
+		} finally {
+			limit.release(System.nanoTime() - start, dropped);
 		}
+	}
+
+	private static QName getOperationName(MessageContext messageContext, MethodEndpoint methodEndpoint) {
+		Object operation = messageContext.getProperty(JaxWsAnnotationMethodEndpointMapping.OPERATION_PROPERTY);
+		return operation instanceof QName ? (QName) operation : new QName(methodEndpoint.getMethod().getName());
+	}
+
+	/**
+	 * Dispatches the request, recording each phase in the dispatch metrics, if
+	 * any, and as a Flight Recorder event, if enabled.
+	 */
+	private void dispatchUnlimited(MessageContext messageContext, MethodEndpoint methodEndpoint) throws Exception {
+		DispatchMetrics dispatchMetrics = messageContext.containsProperty(JaxWsEndpointWarmer.WARM_UP_PROPERTY) ? null
+				: this.dispatchMetrics;
+		boolean measured = null != dispatchMetrics || DispatchEvents.isEnabled();
+		QName operationName = measured ? getOperationName(messageContext, methodEndpoint) : null;
+		DispatchPhase phase = DispatchPhase.UNWRAP;
+		Object event = measured ? DispatchEvents.begin(phase) : null;
+		long start = measured ? System.nanoTime() : 0;
+		try {
+			Object[] args = getMethodArguments(messageContext, methodEndpoint);
+			if (measured) {
+				start = recordPhase(dispatchMetrics, event, operationName, phase, start, true);
+				phase = DispatchPhase.INVOKE;
+				event = DispatchEvents.begin(phase);
+			}
+
+			if (logger.isTraceEnabled()) {
+				logger.trace("Invoking [" + methodEndpoint + "] with arguments " + Arrays.asList(args));
+			}
+
+			Object returnValue = invokeMethod(methodEndpoint, args);
+			if (measured) {
+				start = recordPhase(dispatchMetrics, event, operationName, phase, start, true);
+				phase = DispatchPhase.WRAP;
+				event = DispatchEvents.begin(phase);
+			}
 
-		Object returnValue = methodEndpoint.invoke(args);
+			if (logger.isTraceEnabled()) {
+				logger.trace("Method [" + methodEndpoint + "] returned [" + returnValue + "]");
+			}
 
-		if (logger.isTraceEnabled()) {
-			logger.trace("Method [" + methodEndpoint + "] returned [" + returnValue + "]");
+			handleMethodReturnValue(messageContext, args, returnValue, methodEndpoint);
+			if (measured) {
+				recordPhase(dispatchMetrics, event, operationName, phase, start, true);
+			}
+		} catch (Exception ex) {
+			if (measured) {
+				recordPhase(dispatchMetrics, event, operationName, phase, start, false);
+			}
+			throw ex;
 		}
+	}
 
-		handleMethodReturnValue(messageContext, args, returnValue, methodEndpoint);
+	/**
+	 * Records a dispatch phase started at the given time and returns the time
+	 * it ended.
+	 */
+	private static long recordPhase(DispatchMetrics dispatchMetrics, Object event, QName operationName,
+			DispatchPhase phase, long start, boolean success) {
+		long end = System.nanoTime();
+		DispatchEvents.commit(event, operationName, success);
+		if (null != dispatchMetrics) {
+			dispatchMetrics.recordPhase(operationName, phase, end - start, success);
+		}
+		return end;
+	}
+
+	/**
+	 * Invokes the given method endpoint with the resolved arguments.
+	 *
+	 * <p>
+	 * This implementation delegates to {@link MethodEndpoint#invoke(Object...)}.
+	 *
+	 * @param methodEndpoint
+	 *            the method endpoint to invoke
+	 * @param args
+	 *            the method arguments
+	 * @return the method return value
+	 * @throws Exception
+	 *             in case of errors
+	 */
+	protected Object invokeMethod(MethodEndpoint methodEndpoint, Object[] args) throws Exception {
+		return methodEndpoint.invoke(args);
 	}
 
 	/**
 	 * Returns the argument array for the given method endpoint.
 	 *
 	 * <p>
-	 * This implementation iterates over the set
-	 * {@linkplain #setMethodArgumentResolvers(List) argument resolvers} to
-	 * resolve each argument.
+	 * This implementation resolves each argument with the first of the set
+	 * {@linkplain #setMethodArgumentResolvers(List) argument resolvers}
+	 * supporting it. The choice is made once per method endpoint.
 	 *
 	 * @param messageContext
 	 *            the current message context
@@ -188,14 +659,12 @@ public class JaxWsAnnotationMethodEndpointAdapter extends AbstractMethodEndpoint
 	 */
 	protected Object[] getMethodArguments(MessageContext messageContext, MethodEndpoint methodEndpoint)
 			throws Exception {
-		MethodParameter[] parameters = methodEndpoint.getMethodParameters();
+		MethodEndpointStrategies strategies = getStrategies(methodEndpoint);
+		MethodParameter[] parameters = strategies.parameters;
 		Object[] args = new Object[parameters.length];
 		for (int i = 0; i < parameters.length; i++) {
-			for (MethodArgumentResolver methodArgumentResolver : methodArgumentResolvers) {
-				if (methodArgumentResolver.supportsParameter(parameters[i])) {
-					args[i] = methodArgumentResolver.resolveArgument(messageContext, parameters[i]);
-					break;
-				}
+			if (null != strategies.argumentResolvers[i]) {
+				args[i] = strategies.argumentResolvers[i].resolveArgument(messageContext, parameters[i]);
 			}
 		}
 		return args;
@@ -205,9 +674,9 @@ public class JaxWsAnnotationMethodEndpointAdapter extends AbstractMethodEndpoint
 	 * Handle the return value for the given method endpoint.
 	 *
 	 * <p>
-	 * This implementation iterates over the set
+	 * This implementation handles the return value with the first of the set
 	 * {@linkplain #setMethodReturnValueHandlers(java.util.List)} return value
-	 * handlers} to resolve the return value.
+	 * handlers} supporting it. The choice is made once per method endpoint.
 	 *
 	 * @param messageContext
 	 *            the current message context
@@ -220,13 +689,12 @@ public class JaxWsAnnotationMethodEndpointAdapter extends AbstractMethodEndpoint
 	 */
 	protected void handleMethodReturnValue(MessageContext messageContext, Object returnValue,
 			MethodEndpoint methodEndpoint) throws Exception {
-		MethodParameter returnType = methodEndpoint.getReturnType();
+		MethodEndpointStrategies strategies = getStrategies(methodEndpoint);
+		MethodParameter returnType = strategies.returnType;
 		if (!Void.TYPE.equals(returnType.getParameterType())) {
-			for (MethodReturnValueHandler methodReturnValueHandler : methodReturnValueHandlers) {
-				if (methodReturnValueHandler.supportsReturnType(returnType)) {
-					methodReturnValueHandler.handleReturnValue(messageContext, returnType, returnValue);
-					return;
-				}
+			if (null != strategies.returnValueHandler) {
+				strategies.returnValueHandler.handleReturnValue(messageContext, returnType, returnValue);
+				return;
 			}
 			throw new IllegalStateException(
 					"Return value [" + returnValue + "] not resolved by any MethodReturnValueHandler");
@@ -237,4 +705,36 @@ public class JaxWsAnnotationMethodEndpointAdapter extends AbstractMethodEndpoint
 			MethodEndpoint methodEndpoint) throws Exception {
 		handleMethodReturnValue(messageContext, returnValue, methodEndpoint);
 	}
+
+	/**
+	 * The argument resolvers and return value handler chosen for a method
+	 * endpoint.
+	 */
+	private final class MethodEndpointStrategies {
+
+		final MethodParameter[] parameters;
+		final MethodArgumentResolver[] argumentResolvers;
+		final MethodParameter returnType;
+		final MethodReturnValueHandler returnValueHandler;
+
+		MethodEndpointStrategies(MethodEndpoint methodEndpoint) {
+			this.parameters = methodEndpoint.getMethodParameters();
+			this.argumentResolvers = new MethodArgumentResolver[parameters.length];
+			for (int i = 0; i < parameters.length; i++) {
+				argumentResolvers[i] = findMethodArgumentResolver(parameters[i]);
+			}
+			this.returnType = methodEndpoint.getReturnType();
+			this.returnValueHandler = Void.TYPE.equals(returnType.getParameterType()) ? null
+					: findMethodReturnValueHandler(returnType);
+		}
+
+		boolean isSupported() {
+			for (MethodArgumentResolver argumentResolver : argumentResolvers) {
+				if (null == argumentResolver) {
+					return false;
+				}
+			}
+			return null != returnValueHandler || Void.TYPE.equals(returnType.getParameterType());
+		}
+	}
 }
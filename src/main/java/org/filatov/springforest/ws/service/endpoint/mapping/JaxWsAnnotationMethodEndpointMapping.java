@@ -1,28 +1,150 @@
 package org.filatov.springforest.ws.service.endpoint.mapping;
 
+import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.jws.WebMethod;
 import javax.jws.WebParam;
 import javax.jws.WebService;
 import javax.xml.namespace.QName;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.ws.RequestWrapper;
 
+import org.filatov.springforest.ws.service.endpoint.mapping.index.JaxWsEndpointIndex;
+import org.filatov.springforest.ws.service.endpoint.mapping.jfr.DispatchEvents;
+import org.filatov.springforest.ws.service.endpoint.mapping.metrics.DispatchMetrics;
+import org.filatov.springforest.ws.service.endpoint.mapping.metrics.DispatchPhase;
 import org.filatov.springforest.ws.service.endpoint.mapping.util.JaxWsAnnotationHelper;
+import org.filatov.springforest.ws.service.endpoint.mapping.util.PayloadRootHelper;
+import org.filatov.springforest.ws.service.endpoint.mapping.util.TransportHelper;
+import org.filatov.springforest.ws.service.endpoint.mapping.warmup.JaxWsEndpointWarmer;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContextException;
 import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
+import org.springframework.ws.WebServiceMessage;
 import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.server.endpoint.MethodEndpoint;
 import org.springframework.ws.server.endpoint.mapping.AbstractAnnotationMethodEndpointMapping;
-import org.springframework.ws.server.endpoint.support.PayloadRootUtils;
+import org.springframework.ws.soap.SoapHeader;
+import org.springframework.ws.soap.SoapHeaderElement;
+import org.springframework.ws.soap.SoapMessage;
 
 @Component
 public class JaxWsAnnotationMethodEndpointMapping extends AbstractAnnotationMethodEndpointMapping<QName> {
 
-	private static TransformerFactory transformerFactory;
-	static {
-		transformerFactory = TransformerFactory.newInstance();
+	/**
+	 * Name of the message context property holding the lookup key of the
+	 * request, set when an endpoint is looked up.
+	 */
+	public static final String OPERATION_PROPERTY = JaxWsAnnotationMethodEndpointMapping.class.getName()
+			+ ".OPERATION";
+
+	/**
+	 * Name of the message context property holding the operation of a request
+	 * looked up by its action, whose payload root is checked against it when
+	 * the payload is unmarshalled.
+	 */
+	public static final String ACTION_OPERATION_PROPERTY = JaxWsAnnotationMethodEndpointMapping.class.getName()
+			+ ".ACTION_OPERATION";
+
+	/** WS-Addressing {@code Action} header names, latest version first. */
+	private static final QName[] ADDRESSING_ACTION_NAMES = {
+			new QName("http://www.w3.org/2005/08/addressing", "Action"),
+			new QName("http://schemas.xmlsoap.org/ws/2004/08/addressing", "Action") };
+
+	private final PayloadRootHelper payloadRootHelper = new PayloadRootHelper();
+
+	private final Map<QName, MethodEndpoint> registeredEndpoints = new ConcurrentHashMap<QName, MethodEndpoint>();
+
+	private DispatchMetrics dispatchMetrics;
+
+	private boolean useActionLookup = true;
+
+	private final Map<String, ActionBinding> actionBindings = new ConcurrentHashMap<String, ActionBinding>();
+
+	private final Set<String> ambiguousActions = Collections.synchronizedSet(new HashSet<String>());
+
+	private boolean useEndpointIndex = false;
+
+	private JaxWsEndpointIndex endpointIndex;
+
+	/**
+	 * Returns the metrics receiving the lookup timings, or {@code null} if
+	 * they are not recorded.
+	 */
+	public DispatchMetrics getDispatchMetrics() {
+		return dispatchMetrics;
+	}
+
+	/**
+	 * Sets the metrics receiving the lookup timings and request sizes. Not set
+	 * by default, unless a {@link DispatchMetrics} bean is present.
+	 * {@linkplain JaxWsEndpointWarmer Warm-up} requests are not recorded.
+	 */
+	@Autowired(required = false)
+	public void setDispatchMetrics(DispatchMetrics dispatchMetrics) {
+		this.dispatchMetrics = dispatchMetrics;
+	}
+
+	/**
+	 * Returns {@code true} if endpoint methods are registered from the
+	 * {@link JaxWsEndpointIndex} generated at compile time.
+	 */
+	public boolean isUseEndpointIndex() {
+		return useEndpointIndex;
+	}
+
+	/**
+	 * Sets whether endpoint methods are registered from the
+	 * {@link JaxWsEndpointIndex} generated at compile time instead of scanning
+	 * the endpoint classes. Endpoints missing from the index, or whose indexed
+	 * methods can not be found, are scanned. Defaults to {@code false}.
+	 */
+	public void setUseEndpointIndex(boolean useEndpointIndex) {
+		this.useEndpointIndex = useEndpointIndex;
+	}
+
+	/**
+	 * Returns {@code true} if endpoints are looked up by the action of the
+	 * request before its payload root.
+	 */
+	public boolean isUseActionLookup() {
+		return useActionLookup;
+	}
+
+	/**
+	 * Sets whether endpoints are looked up by the {@code SOAPAction} or the
+	 * WS-Addressing {@code Action} of the request, matched against the
+	 * {@link WebMethod#action()} of the registered methods, before the payload
+	 * root, without reading the payload. The payload root is checked to be the
+	 * operation element of the action when the payload is unmarshalled, and
+	 * requests whose payload does not match their action are rejected with an
+	 * {@link ActionMismatchException}. Requests without a known action are
+	 * looked up by their payload root. Actions declared by more than one
+	 * method are not used. Defaults to {@code true}.
+	 */
+	public void setUseActionLookup(boolean useActionLookup) {
+		this.useActionLookup = useActionLookup;
+	}
+
+	private static final class ActionBinding {
+
+		final QName operation;
+		final MethodEndpoint endpoint;
+
+		ActionBinding(QName operation, MethodEndpoint endpoint) {
+			this.operation = operation;
+			this.endpoint = endpoint;
+		}
 	}
 
 	private final class Binding {
@@ -37,9 +159,189 @@ public class JaxWsAnnotationMethodEndpointMapping extends AbstractAnnotationMeth
 		}
 	}
 
+	/**
+	 * Returns the registered method endpoints by their payload root names.
+	 */
+	public Map<QName, MethodEndpoint> getRegisteredEndpoints() {
+		return Collections.unmodifiableMap(registeredEndpoints);
+	}
+
+	@Override
+	protected void initApplicationContext() throws BeansException {
+		if (useEndpointIndex) {
+			try {
+				endpointIndex = JaxWsEndpointIndex.load(getApplicationContext().getClassLoader());
+			} catch (IOException ex) {
+				throw new ApplicationContextException("Could not load endpoint index", ex);
+			}
+			if (endpointIndex.isEmpty() && logger.isWarnEnabled()) {
+				logger.warn("No endpoint index found at " + JaxWsEndpointIndex.INDEX_LOCATION
+						+ ", endpoint classes are scanned");
+			}
+		}
+		try {
+			super.initApplicationContext();
+		} finally {
+			endpointIndex = null;
+		}
+	}
+
+	@Override
+	protected void registerMethods(String beanName) {
+		if (null != endpointIndex) {
+			Class<?> endpointType = getApplicationContext().getType(beanName);
+			Map<Method, QName> methods = null != endpointType
+					? endpointIndex.resolveOperations(ClassUtils.getUserClass(endpointType)) : null;
+			if (null != methods) {
+				for (Map.Entry<Method, QName> entry : methods.entrySet()) {
+					registerEndpoint(entry.getValue(),
+							new MethodEndpoint(beanName, getApplicationContext(), entry.getKey()));
+				}
+				return;
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Endpoint " + beanName + " is not indexed, scanning " + endpointType);
+			}
+		}
+		super.registerMethods(beanName);
+	}
+
+	@Override
+	protected void registerEndpoint(QName key, MethodEndpoint endpoint) throws BeansException {
+		super.registerEndpoint(key, endpoint);
+		registeredEndpoints.put(key, endpoint);
+		registerAction(key, endpoint);
+	}
+
+	private void registerAction(QName key, MethodEndpoint endpoint) {
+		WebMethod webMethod = JaxWsAnnotationHelper.getMethodAnnotation(endpoint.getMethod(), WebMethod.class);
+		String action = null != webMethod ? webMethod.action() : null;
+		if (!StringUtils.hasLength(action) || ambiguousActions.contains(action)) {
+			return;
+		}
+		ActionBinding existing = actionBindings.get(action);
+		if (null != existing && !existing.operation.equals(key)) {
+			if (logger.isWarnEnabled()) {
+				logger.warn("Action [" + action + "] is declared by both " + existing.endpoint + " and " + endpoint
+						+ ", requests with this action are looked up by payload root");
+			}
+			ambiguousActions.add(action);
+			actionBindings.remove(action);
+			return;
+		}
+		actionBindings.put(action, new ActionBinding(key, endpoint));
+	}
+
+	@Override
+	protected Object getEndpointInternal(MessageContext messageContext) throws Exception {
+		if (useActionLookup && !actionBindings.isEmpty()) {
+			Object event = DispatchEvents.begin(DispatchPhase.LOOKUP);
+			long start = System.nanoTime();
+			ActionBinding actionBinding = lookupAction(messageContext.getRequest());
+			if (null != actionBinding) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Looked up endpoint " + actionBinding.endpoint + " by action");
+				}
+				messageContext.setProperty(ACTION_OPERATION_PROPERTY, actionBinding.operation);
+				recordLookup(messageContext, getRequestMetrics(messageContext), event, actionBinding.operation,
+						start, true);
+				return actionBinding.endpoint;
+			}
+		}
+		return super.getEndpointInternal(messageContext);
+	}
+
+	/**
+	 * Returns the binding of the {@code SOAPAction} of the given request, or
+	 * else of its WS-Addressing {@code Action}, or {@code null} if neither is
+	 * known.
+	 */
+	private ActionBinding lookupAction(WebServiceMessage request) {
+		if (!(request instanceof SoapMessage)) {
+			return null;
+		}
+		SoapMessage soapMessage = (SoapMessage) request;
+		String soapAction = unquote(soapMessage.getSoapAction());
+		if (StringUtils.hasLength(soapAction)) {
+			ActionBinding actionBinding = actionBindings.get(soapAction);
+			if (null != actionBinding) {
+				return actionBinding;
+			}
+		}
+		SoapHeader soapHeader = soapMessage.getSoapHeader();
+		if (null == soapHeader) {
+			return null;
+		}
+		for (QName actionName : ADDRESSING_ACTION_NAMES) {
+			Iterator<SoapHeaderElement> headerElements = soapHeader.examineHeaderElements(actionName);
+			if (headerElements.hasNext()) {
+				String action = headerElements.next().getText();
+				return null != action ? actionBindings.get(action.trim()) : null;
+			}
+		}
+		return null;
+	}
+
+	private static String unquote(String soapAction) {
+		if (null != soapAction && soapAction.length() > 1 && '"' == soapAction.charAt(0)
+				&& '"' == soapAction.charAt(soapAction.length() - 1)) {
+			return soapAction.substring(1, soapAction.length() - 1);
+		}
+		return soapAction;
+	}
+
 	@Override
 	protected QName getLookupKeyForMessage(MessageContext messageContext) throws Exception {
-		return PayloadRootUtils.getPayloadRootQName(messageContext.getRequest().getPayloadSource(), transformerFactory);
+		DispatchMetrics dispatchMetrics = getRequestMetrics(messageContext);
+		Object event = DispatchEvents.begin(DispatchPhase.LOOKUP);
+		if (null == dispatchMetrics && null == event) {
+			QName operation = payloadRootHelper.getPayloadRootQName(messageContext.getRequest().getPayloadSource());
+			if (null != operation) {
+				messageContext.setProperty(OPERATION_PROPERTY, operation);
+			}
+			return operation;
+		}
+		long start = System.nanoTime();
+		QName operation = null;
+		boolean success = false;
+		try {
+			operation = payloadRootHelper.getPayloadRootQName(messageContext.getRequest().getPayloadSource());
+			success = true;
+			return operation;
+		} finally {
+			recordLookup(messageContext, dispatchMetrics, event,
+					null != operation ? operation : DispatchMetrics.UNKNOWN_OPERATION, start, success);
+		}
+	}
+
+	/**
+	 * Returns the metrics the given request is recorded in, none for warm-up
+	 * requests.
+	 */
+	private DispatchMetrics getRequestMetrics(MessageContext messageContext) {
+		return messageContext.containsProperty(JaxWsEndpointWarmer.WARM_UP_PROPERTY) ? null : dispatchMetrics;
+	}
+
+	/**
+	 * Records the lookup of the given operation. Operations without a
+	 * registered endpoint are recorded as
+	 * {@link DispatchMetrics#UNKNOWN_OPERATION}, so that clients sending
+	 * arbitrary payload roots can not grow the metrics without bound.
+	 */
+	private void recordLookup(MessageContext messageContext, DispatchMetrics dispatchMetrics, Object event,
+			QName operation, long start, boolean success) {
+		QName metricsOperation = registeredEndpoints.containsKey(operation) ? operation
+				: DispatchMetrics.UNKNOWN_OPERATION;
+		DispatchEvents.commit(event, metricsOperation, success);
+		if (null != dispatchMetrics) {
+			dispatchMetrics.recordPhase(metricsOperation, DispatchPhase.LOOKUP, System.nanoTime() - start,
+					success);
+			long requestSize = TransportHelper.getRequestContentLength();
+			if (requestSize >= 0) {
+				dispatchMetrics.recordRequestSize(metricsOperation, requestSize);
+			}
+		}
+		messageContext.setProperty(OPERATION_PROPERTY, operation);
 	}
 
 	@Override
@@ -0,0 +1,976 @@
+package org.filatov.springforest.ws.service.endpoint.mapping;
+
+import java.beans.Introspector;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import javax.activation.DataHandler;
+import javax.jws.WebParam;
+import javax.jws.WebResult;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlNsForm;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlSchema;
+import javax.xml.bind.annotation.XmlSchemaType;
+import javax.xml.bind.annotation.XmlType;
+import javax.xml.namespace.QName;
+import javax.xml.transform.Result;
+import javax.xml.ws.Holder;
+import javax.xml.ws.RequestWrapper;
+import javax.xml.ws.ResponseWrapper;
+
+import org.filatov.springforest.ws.service.endpoint.mapping.mime.InputStreamDataSource;
+import org.filatov.springforest.ws.service.endpoint.mapping.util.FutureHelper;
+import org.filatov.springforest.ws.service.endpoint.mapping.util.JaxWsAnnotationHelper;
+import org.filatov.springforest.ws.service.endpoint.mapping.util.MethodHandleHelper;
+import org.filatov.springforest.ws.service.endpoint.mapping.validation.ValidatePayload;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.util.ClassUtils;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.server.endpoint.MethodEndpoint;
+import org.springframework.ws.server.endpoint.adapter.method.MethodArgumentResolver;
+import org.springframework.ws.server.endpoint.adapter.method.MethodReturnValueHandler;
+
+/**
+ * Immutable description of how a single {@link MethodEndpoint} is invoked.
+ *
+ * <p>
+ * Holds everything that can be derived from the endpoint method and its
+ * {@code @RequestWrapper} / {@code @ResponseWrapper} / {@code @WebParam} /
+ * {@code @WebResult} annotations: the wrapper classes, the resolved wrapper
+ * getters and setters, the parameter modes and {@link Holder} positions, and
+ * the {@link MethodArgumentResolver}s and {@link MethodReturnValueHandler}
+ * chosen for the payload. A plan is built once per endpoint, so handling a
+ * request is reduced to unwrap, invoke and wrap.
+ *
+ * <p>
+ * In {@link InvocationMode#METHOD_HANDLE} mode the wrapper accessors, the
+ * wrapper constructor and the endpoint method are bound into
+ * {@link MethodHandle}s when the plan is built. Members which can not be bound
+ * are invoked reflectively.
+ *
+ * <p>
+ * {@link InputStream} parameters, {@code Holder}s and results are bound to
+ * {@link DataHandler} wrapper properties, such as {@code @XmlMimeType} MTOM
+ * content, so binary content is streamed from and to the message attachments.
+ *
+ * <p>
+ * When every {@code IN} and {@code INOUT} parameter is bound to a plain
+ * {@code @XmlElement} wrapper property, or to a {@code List} property of
+ * plain repeated elements, the plan also holds the child element names and
+ * types of the request wrapper, so arguments can be
+ * {@linkplain #unmarshalArguments(MessageContext) unmarshalled directly} from
+ * the wrapper element without creating the wrapper object. Likewise, when
+ * the result and every {@code OUT} and {@code INOUT} parameter are bound to
+ * plain response wrapper properties, the return value can be
+ * {@linkplain #marshalReturnValue(MessageContext, Object[], Object) marshalled
+ * directly} as the children of the response wrapper element.
+ *
+ * <p>
+ * Methods returning a {@link Stream} or an {@link Iterator} of the items of a
+ * repeated {@code @WebResult} element, bound to a {@code List} wrapper
+ * property, have their items marshalled one by one as they are produced when
+ * the return value is marshalled directly; otherwise the items are collected
+ * into the wrapper list. Streams and closeable iterators are closed once
+ * consumed.
+ */
+public final class JaxWsAnnotationMethodInvocationPlan {
+
+	/**
+	 * Defines how the endpoint method and the wrapper members are invoked.
+	 */
+	public enum InvocationMode {
+		/** Invoke through {@code java.lang.reflect}. */
+		REFLECTION,
+		/** Invoke through {@code MethodHandle}s bound at startup. */
+		METHOD_HANDLE
+	}
+
+	private final MethodEndpoint methodEndpoint;
+
+	private final InvocationMode invocationMode;
+
+	private final MethodHandle endpointHandle;
+
+	private final Class<?> requestWrapperType;
+
+	private final Class<?> responseWrapperType;
+
+	private final MethodParameter[] parameters;
+
+	private final MethodArgumentResolver[] argumentResolvers;
+
+	private final MethodParameter returnType;
+
+	private final MethodReturnValueHandler returnValueHandler;
+
+	private final ParameterBinding[] parameterBindings;
+
+	private final boolean asynchronous;
+
+	private final boolean validated;
+
+	private final Class<?> resultType;
+
+	private final Method resultSetter;
+
+	private final Method resultGetter;
+
+	private final boolean iteratedResult;
+
+	private final boolean streamedResult;
+
+	private final MethodHandle resultSetterHandle;
+
+	private final MethodHandle responseWrapperConstructor;
+
+	private final QName[] requestElementNames;
+
+	private final Class<?>[] requestElementTypes;
+
+	private final boolean[] requestElementRepeated;
+
+	private final int[] requestElementParameters;
+
+	private final QName responseWrapperName;
+
+	private final ResponseElement[] responseElements;
+
+	/**
+	 * Creates a new plan.
+	 *
+	 * @param methodEndpoint
+	 *            the method endpoint the plan is built for
+	 * @param parameters
+	 *            the payload parameters, as seen by the argument resolvers
+	 * @param argumentResolvers
+	 *            the resolver chosen for each payload parameter, {@code null}
+	 *            elements denote unsupported parameters
+	 * @param returnType
+	 *            the payload return type, as seen by the return value handlers
+	 * @param returnValueHandler
+	 *            the handler chosen for the return type, or {@code null}
+	 * @param invocationMode
+	 *            the way members are invoked
+	 * @throws ClassNotFoundException
+	 *             if a wrapper class can not be loaded
+	 */
+	JaxWsAnnotationMethodInvocationPlan(MethodEndpoint methodEndpoint, MethodParameter[] parameters,
+			MethodArgumentResolver[] argumentResolvers, MethodParameter returnType,
+			MethodReturnValueHandler returnValueHandler, InvocationMode invocationMode)
+			throws ClassNotFoundException {
+		this.methodEndpoint = methodEndpoint;
+		this.invocationMode = invocationMode;
+		this.parameters = parameters;
+		this.argumentResolvers = argumentResolvers;
+		this.returnType = returnType;
+		this.returnValueHandler = returnValueHandler;
+
+		Method method = methodEndpoint.getMethod();
+		this.asynchronous = FutureHelper.isAsynchronous(method);
+		this.validated = null != JaxWsAnnotationHelper.getMethodAnnotation(method, ValidatePayload.class);
+		this.resultType = FutureHelper.getResultType(method);
+		RequestWrapper requestWrapper = JaxWsAnnotationHelper.getMethodAnnotation(method, RequestWrapper.class);
+		ResponseWrapper responseWrapper = JaxWsAnnotationHelper.getMethodAnnotation(method, ResponseWrapper.class);
+		this.requestWrapperType = null != requestWrapper ? Class.forName(requestWrapper.className()) : null;
+		this.responseWrapperType = null != responseWrapper ? Class.forName(responseWrapper.className()) : null;
+		this.parameterBindings = null != requestWrapperType ? bindParameters(method) : null;
+		this.iteratedResult = isIterated(resultType);
+		this.resultSetter = null != responseWrapperType ? bindResult(method) : null;
+		this.resultGetter = null != responseWrapperType && iteratedResult && null == resultSetter
+				? findMethod(responseWrapperType, "get" + capitalize(getWebResultName(method))) : null;
+		int elementCount = countRequestElements();
+		this.requestElementNames = elementCount >= 0 ? new QName[elementCount] : null;
+		this.requestElementTypes = elementCount >= 0 ? new Class<?>[elementCount] : null;
+		this.requestElementRepeated = elementCount >= 0 ? new boolean[elementCount] : null;
+		this.requestElementParameters = elementCount >= 0 ? new int[elementCount] : null;
+		for (int i = 0, j = 0; elementCount >= 0 && i < parameterBindings.length; i++) {
+			if (null != parameterBindings[i].elementName) {
+				requestElementNames[j] = parameterBindings[i].elementName;
+				requestElementTypes[j] = parameterBindings[i].elementType;
+				requestElementRepeated[j] = parameterBindings[i].repeated;
+				requestElementParameters[j++] = i;
+			}
+		}
+		this.streamedResult = null != resultSetter && InputStream.class.equals(resultType)
+				&& DataHandler.class.equals(resultSetter.getParameterTypes()[0]);
+		this.responseElements = null != responseWrapperType ? bindResponseElements(method) : null;
+		this.responseWrapperName = null != responseElements ? getRootElementName(responseWrapperType) : null;
+		this.endpointHandle = isMethodHandleMode() ? MethodHandleHelper.unreflectSpreader(method) : null;
+		this.resultSetterHandle = isMethodHandleMode() && null != resultSetter
+				? MethodHandleHelper.unreflectSetter(resultSetter) : null;
+		this.responseWrapperConstructor = isMethodHandleMode() && null != responseWrapperType
+				? MethodHandleHelper.unreflectConstructor(responseWrapperType) : null;
+	}
+
+	private boolean isMethodHandleMode() {
+		return InvocationMode.METHOD_HANDLE.equals(invocationMode);
+	}
+
+	private ParameterBinding[] bindParameters(Method method) {
+		Parameter[] params = method.getParameters();
+		ParameterBinding[] bindings = new ParameterBinding[params.length];
+		for (int i = 0; i < params.length; i++) {
+			WebParam webParam = JaxWsAnnotationHelper.getParameterAnnotation(method, i, WebParam.class);
+			if (null == webParam) {
+				throw new IllegalArgumentException("WebParam annotation not found in " + method + " for param " + i);
+			}
+			WebParam.Mode mode = null != webParam.mode() ? webParam.mode() : WebParam.Mode.IN;
+			boolean holder = params[i].getType().equals(Holder.class);
+			Class<?> valueType = holder ? ResolvableType.forMethodParameter(method, i).resolveGeneric(0)
+					: params[i].getType();
+			Method getter = null;
+			if (!WebParam.Mode.OUT.equals(mode)) {
+				getter = findMethod(requestWrapperType, "get" + capitalize(webParam.name()));
+			}
+			boolean streamed = null != getter && InputStream.class.equals(valueType)
+					&& DataHandler.class.isAssignableFrom(getter.getReturnType());
+			Method[] setters = null;
+			if (null != responseWrapperType && !WebParam.Mode.IN.equals(mode)) {
+				if (!holder) {
+					throw new IllegalArgumentException("Output values should be placed at holders");
+				}
+				setters = findSetters(responseWrapperType, "set" + capitalize(webParam.name()));
+			}
+			MethodHandle getterHandle = null;
+			MethodHandle[] setterHandles = null;
+			if (isMethodHandleMode()) {
+				getterHandle = null != getter ? MethodHandleHelper.unreflectGetter(getter) : null;
+				if (null != setters) {
+					setterHandles = new MethodHandle[setters.length];
+					for (int j = 0; j < setters.length; j++) {
+						setterHandles[j] = MethodHandleHelper.unreflectSetter(setters[j]);
+					}
+				}
+			}
+			QName elementName = null;
+			Class<?> elementType = null;
+			boolean repeated = false;
+			if (null != getter && !streamed) {
+				AnnotatedElement member = findProperty(requestWrapperType, getter, webParam.name());
+				Class<?> propertyType = getter.getReturnType();
+				if (List.class.equals(propertyType) && !holder && valueType.isAssignableFrom(ArrayList.class)) {
+					propertyType = ResolvableType.forMethodReturnType(getter).resolveGeneric(0);
+					repeated = true;
+				}
+				if (null != propertyType && isPlainElement(member, propertyType)) {
+					elementName = getElementName(requestWrapperType, member, webParam.name());
+					elementType = ClassUtils.resolvePrimitiveIfNecessary(propertyType);
+				}
+			}
+			ResponseElement responseElement = null;
+			if (null != setters && 0 < setters.length && !InputStream.class.equals(valueType)) {
+				responseElement = createResponseElement(setters[0], webParam.name(), i, false);
+			}
+			Object defaultValue = !holder && valueType.isPrimitive() ? Array.get(Array.newInstance(valueType, 1), 0)
+					: null;
+			bindings[i] = new ParameterBinding(mode, holder, streamed, getter, getterHandle, setters, setterHandles,
+					elementName, elementType, repeated, defaultValue, responseElement);
+		}
+		return bindings;
+	}
+
+	/**
+	 * Returns the response wrapper children written for the result and the
+	 * {@code OUT} and {@code INOUT} parameters in wrapper property order, or
+	 * {@code null} if any of them can not be marshalled on its own.
+	 */
+	private ResponseElement[] bindResponseElements(Method method) {
+		if (null == getRootElementName(responseWrapperType)) {
+			return null;
+		}
+		List<ResponseElement> elements = new ArrayList<ResponseElement>();
+		Method resultAccessor = null != resultSetter ? resultSetter : resultGetter;
+		if (null != resultAccessor) {
+			if (streamedResult) {
+				return null;
+			}
+			ResponseElement resultElement = createResponseElement(resultAccessor, getWebResultName(method), -1,
+					iteratedResult);
+			if (null == resultElement) {
+				return null;
+			}
+			elements.add(resultElement);
+		}
+		for (int i = 0; null != parameterBindings && i < parameterBindings.length; i++) {
+			ParameterBinding binding = parameterBindings[i];
+			if (null != binding.setters) {
+				if (null == binding.responseElement) {
+					return null;
+				}
+				elements.add(binding.responseElement);
+			}
+		}
+		final List<String> propertyOrder = getPropertyOrder(responseWrapperType);
+		ResponseElement[] ordered = elements.toArray(new ResponseElement[elements.size()]);
+		Arrays.sort(ordered, new Comparator<ResponseElement>() {
+
+			public int compare(ResponseElement left, ResponseElement right) {
+				return orderOf(propertyOrder, left.propertyName) - orderOf(propertyOrder, right.propertyName);
+			}
+		});
+		return ordered;
+	}
+
+	private ResponseElement createResponseElement(Method accessor, String name, int parameterIndex,
+			boolean repeated) {
+		AnnotatedElement member = findProperty(responseWrapperType, accessor, name);
+		ResolvableType propertyType = member instanceof Field ? ResolvableType.forField((Field) member)
+				: 1 == accessor.getParameterTypes().length ? ResolvableType.forMethodParameter(accessor, 0)
+						: ResolvableType.forMethodReturnType(accessor);
+		Class<?> type = propertyType.resolve();
+		if (repeated) {
+			if (!List.class.equals(type)) {
+				return null;
+			}
+			type = propertyType.resolveGeneric(0);
+		}
+		if (null == type || !isPlainElement(member, type)) {
+			return null;
+		}
+		XmlElement xmlElement = member.getAnnotation(XmlElement.class);
+		String propertyName = member instanceof Field ? ((Field) member).getName()
+				: Introspector.decapitalize(accessor.getName().substring(3));
+		return new ResponseElement(getElementName(responseWrapperType, member, name),
+				ClassUtils.resolvePrimitiveIfNecessary(type), null != xmlElement && xmlElement.nillable(), repeated,
+				propertyName, parameterIndex);
+	}
+
+	/**
+	 * Returns the property names of the given wrapper type in the order JAXB
+	 * writes them: the {@code @XmlType} property order if declared, otherwise
+	 * the field declaration order.
+	 */
+	private static List<String> getPropertyOrder(Class<?> wrapperType) {
+		XmlType xmlType = wrapperType.getAnnotation(XmlType.class);
+		if (null != xmlType && xmlType.propOrder().length > 0 && !"".equals(xmlType.propOrder()[0])) {
+			return Arrays.asList(xmlType.propOrder());
+		}
+		List<String> names = new ArrayList<String>();
+		for (Field field : wrapperType.getDeclaredFields()) {
+			names.add(field.getName());
+		}
+		return names;
+	}
+
+	private static int orderOf(List<String> propertyOrder, String propertyName) {
+		int index = propertyOrder.indexOf(propertyName);
+		return index >= 0 ? index : propertyOrder.size();
+	}
+
+	private static QName getRootElementName(Class<?> wrapperType) {
+		XmlRootElement xmlRootElement = wrapperType.getAnnotation(XmlRootElement.class);
+		if (null == xmlRootElement) {
+			return null;
+		}
+		String localName = !"##default".equals(xmlRootElement.name()) ? xmlRootElement.name()
+				: Introspector.decapitalize(wrapperType.getSimpleName());
+		if (!"##default".equals(xmlRootElement.namespace())) {
+			return new QName(xmlRootElement.namespace(), localName);
+		}
+		Package wrapperPackage = wrapperType.getPackage();
+		XmlSchema xmlSchema = null != wrapperPackage ? wrapperPackage.getAnnotation(XmlSchema.class) : null;
+		return new QName(null != xmlSchema ? xmlSchema.namespace() : "", localName);
+	}
+
+	/**
+	 * Returns the number of request wrapper child elements bound to
+	 * parameters, or {@code -1} if any {@code IN} or {@code INOUT} parameter
+	 * can not be unmarshalled on its own.
+	 */
+	private int countRequestElements() {
+		if (null == parameterBindings) {
+			return -1;
+		}
+		int count = 0;
+		for (ParameterBinding binding : parameterBindings) {
+			if (null != binding.elementName) {
+				count++;
+			} else if (!WebParam.Mode.OUT.equals(binding.mode)) {
+				return -1;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the field holding the wrapper property read by the given getter,
+	 * or the getter itself if there is no such field.
+	 */
+	private static AnnotatedElement findProperty(Class<?> wrapperType, Method getter, String name) {
+		String propertyName = Introspector.decapitalize(getter.getName().substring(3));
+		for (Class<?> type = wrapperType; null != type && !Object.class.equals(type); type = type.getSuperclass()) {
+			for (Field field : type.getDeclaredFields()) {
+				if (field.getName().equals(propertyName) || field.getName().equals(name)) {
+					return field;
+				}
+			}
+		}
+		return getter;
+	}
+
+	/**
+	 * Returns {@code true} if the given wrapper property is a single element
+	 * without JAXB customizations other than {@code @XmlElement} and
+	 * {@code @XmlSchemaType}.
+	 */
+	private static boolean isPlainElement(AnnotatedElement member, Class<?> type) {
+		if (type.isArray() && !byte[].class.equals(type) || Collection.class.isAssignableFrom(type)
+				|| Map.class.isAssignableFrom(type) || JAXBElement.class.equals(type)
+				|| DataHandler.class.equals(type)) {
+			return false;
+		}
+		for (Annotation annotation : member.getAnnotations()) {
+			Class<? extends Annotation> annotationType = annotation.annotationType();
+			if (annotationType.getName().startsWith("javax.xml.bind.annotation.")
+					&& !XmlElement.class.equals(annotationType) && !XmlSchemaType.class.equals(annotationType)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static QName getElementName(Class<?> wrapperType, AnnotatedElement member, String name) {
+		XmlElement xmlElement = member.getAnnotation(XmlElement.class);
+		String localName = null != xmlElement && !"##default".equals(xmlElement.name()) ? xmlElement.name()
+				: name;
+		if (null != xmlElement && !"##default".equals(xmlElement.namespace())) {
+			return new QName(xmlElement.namespace(), localName);
+		}
+		Package wrapperPackage = wrapperType.getPackage();
+		XmlSchema xmlSchema = null != wrapperPackage ? wrapperPackage.getAnnotation(XmlSchema.class) : null;
+		if (null != xmlSchema && XmlNsForm.QUALIFIED.equals(xmlSchema.elementFormDefault())) {
+			return new QName(xmlSchema.namespace(), localName);
+		}
+		return new QName(localName);
+	}
+
+	private Method bindResult(Method method) {
+		if (Void.TYPE.equals(resultType)) {
+			return null;
+		}
+		String setterName = "set" + capitalize(getWebResultName(method));
+		if (iteratedResult) {
+			for (Method setter : findSetters(responseWrapperType, setterName)) {
+				if (List.class.equals(setter.getParameterTypes()[0])) {
+					return setter;
+				}
+			}
+			return null;
+		}
+		if (InputStream.class.equals(resultType)) {
+			Method[] setters = findSetters(responseWrapperType, setterName);
+			for (Method setter : setters) {
+				if (DataHandler.class.equals(setter.getParameterTypes()[0])) {
+					return setter;
+				}
+			}
+		}
+		return findMethod(responseWrapperType, setterName, resultType);
+	}
+
+	private static String getWebResultName(Method method) {
+		WebResult webResult = JaxWsAnnotationHelper.getMethodAnnotation(method, WebResult.class);
+		if (null == webResult) {
+			throw new IllegalArgumentException("WebResult annotation not found in " + method);
+		}
+		return webResult.name();
+	}
+
+	/**
+	 * Returns {@code true} if results of the given type are produced item by
+	 * item.
+	 */
+	private static boolean isIterated(Class<?> type) {
+		return Stream.class.equals(type) || Iterator.class.equals(type);
+	}
+
+	private static Iterator<?> iterate(Object value) {
+		return value instanceof Stream ? ((Stream<?>) value).iterator() : (Iterator<?>) value;
+	}
+
+	private static void closeResult(Object value) throws Exception {
+		if (value instanceof AutoCloseable) {
+			((AutoCloseable) value).close();
+		}
+	}
+
+	private static Method findMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+		try {
+			return type.getMethod(name, parameterTypes);
+		} catch (NoSuchMethodException ex) {
+			throw new IllegalArgumentException("Method " + name + " not found in " + type, ex);
+		}
+	}
+
+	private static Method[] findSetters(Class<?> type, String name) {
+		List<Method> setters = new ArrayList<Method>();
+		for (Method method : type.getMethods()) {
+			if (method.getName().equals(name) && 1 == method.getParameterTypes().length) {
+				setters.add(method);
+			}
+		}
+		return setters.toArray(new Method[setters.size()]);
+	}
+
+	private static String capitalize(String str) {
+		if (null == str || 0 == str.length()) {
+			return str;
+		}
+		return Character.toTitleCase(str.charAt(0)) + str.substring(1);
+	}
+
+	/**
+	 * Returns {@code true} if every payload parameter has a resolver and the
+	 * return type has a handler.
+	 */
+	public boolean isSupported() {
+		for (MethodArgumentResolver argumentResolver : argumentResolvers) {
+			if (null == argumentResolver) {
+				return false;
+			}
+		}
+		return null != returnValueHandler || Void.TYPE.equals(returnType.getParameterType());
+	}
+
+	/**
+	 * Returns {@code true} if the arguments can be
+	 * {@linkplain #unmarshalArguments(MessageContext) unmarshalled directly}
+	 * from the request wrapper element.
+	 */
+	public boolean isStreamingUnwrapSupported() {
+		return null != requestElementNames && !validated && 1 == argumentResolvers.length
+				&& argumentResolvers[0] instanceof JaxbPooledPayloadMethodProcessor;
+	}
+
+	/**
+	 * Returns {@code true} if the return value can be
+	 * {@linkplain #marshalReturnValue(MessageContext, Object[], Object)
+	 * marshalled directly} as the children of the response wrapper element.
+	 */
+	public boolean isStreamingWrapSupported() {
+		return null != responseElements && returnValueHandler instanceof JaxbPooledPayloadMethodProcessor;
+	}
+
+	/**
+	 * Returns {@code true} if the request payload is validated while it is
+	 * unmarshalled, as the endpoint method is annotated with
+	 * {@link ValidatePayload}.
+	 */
+	public boolean isValidated() {
+		return validated;
+	}
+
+	/**
+	 * Returns {@code true} if the endpoint method returns a {@link Stream} or
+	 * an {@link Iterator} of the items of a repeated result element.
+	 */
+	public boolean isResultIterated() {
+		return iteratedResult;
+	}
+
+	/**
+	 * Returns {@code true} if the endpoint method returns a
+	 * {@code CompletionStage} or a {@code Future} of its result.
+	 */
+	public boolean isAsynchronous() {
+		return asynchronous;
+	}
+
+	/**
+	 * Returns {@code true} if the request payload is unwrapped from a
+	 * {@code @RequestWrapper} bean.
+	 */
+	public boolean isRequestWrapped() {
+		return null != requestWrapperType;
+	}
+
+	/**
+	 * Returns {@code true} if the response payload is wrapped into a
+	 * {@code @ResponseWrapper} bean.
+	 */
+	public boolean isResponseWrapped() {
+		return null != responseWrapperType;
+	}
+
+	public MethodEndpoint getMethodEndpoint() {
+		return methodEndpoint;
+	}
+
+	public Class<?> getRequestWrapperType() {
+		return requestWrapperType;
+	}
+
+	public Class<?> getResponseWrapperType() {
+		return responseWrapperType;
+	}
+
+	public MethodParameter[] getParameters() {
+		return parameters;
+	}
+
+	public MethodParameter getReturnType() {
+		return returnType;
+	}
+
+	/**
+	 * Returns the type of the value the endpoint method produces, for
+	 * asynchronous methods the type of the value they complete with.
+	 */
+	public Class<?> getResultType() {
+		return resultType;
+	}
+
+	public InvocationMode getInvocationMode() {
+		return invocationMode;
+	}
+
+	/**
+	 * Resolves the payload arguments with the chosen resolvers, validating
+	 * payloads unmarshalled by a {@link JaxbPooledPayloadMethodProcessor} if
+	 * the plan is {@linkplain #isValidated() validated}.
+	 */
+	public Object[] resolveArguments(MessageContext messageContext) throws Exception {
+		Object[] args = new Object[parameters.length];
+		for (int i = 0; i < parameters.length; i++) {
+			if (validated && argumentResolvers[i] instanceof JaxbPooledPayloadMethodProcessor) {
+				args[i] = ((JaxbPooledPayloadMethodProcessor) argumentResolvers[i]).resolveArgument(messageContext,
+						parameters[i], true);
+			} else {
+				args[i] = argumentResolvers[i].resolveArgument(messageContext, parameters[i]);
+			}
+		}
+		return args;
+	}
+
+	/**
+	 * Unwraps the {@code @RequestWrapper} bean into the endpoint method
+	 * arguments, creating {@link Holder}s for {@code OUT} and {@code INOUT}
+	 * parameters.
+	 */
+	public Object[] unwrapArguments(Object wrappedParam) throws Exception {
+		Object[] paramValues = new Object[parameterBindings.length];
+		for (int i = 0; i < parameterBindings.length; i++) {
+			ParameterBinding binding = parameterBindings[i];
+			if (WebParam.Mode.OUT.equals(binding.mode)) {
+				if (binding.holder) {
+					paramValues[i] = new Holder<Object>();
+				}
+			} else if (WebParam.Mode.INOUT.equals(binding.mode)) {
+				if (binding.holder) {
+					paramValues[i] = new Holder<Object>(binding.get(wrappedParam));
+				}
+			} else {
+				paramValues[i] = binding.get(wrappedParam);
+			}
+		}
+		return paramValues;
+	}
+
+	/**
+	 * Unmarshals the endpoint method arguments directly from the child
+	 * elements of the request wrapper element, creating {@link Holder}s for
+	 * {@code OUT} and {@code INOUT} parameters. Child elements not bound to a
+	 * parameter are skipped.
+	 *
+	 * @see #isStreamingUnwrapSupported()
+	 */
+	public Object[] unmarshalArguments(MessageContext messageContext) throws Exception {
+		return unmarshalArguments(messageContext, null, 0);
+	}
+
+	/**
+	 * Unmarshals the endpoint method arguments like
+	 * {@link #unmarshalArguments(MessageContext)}, splitting the items of
+	 * {@code List} parameters into chunks unmarshalled on the given pool.
+	 *
+	 * @param pool
+	 *            the pool unmarshalling chunks, or {@code null} to unmarshal
+	 *            every item on the calling thread
+	 * @param chunkSize
+	 *            the number of items per chunk
+	 * @see JaxbPooledPayloadMethodProcessor#unmarshalChildElements(MessageContext,
+	 *      Class, QName[], Class[], boolean[], ForkJoinPool, int)
+	 */
+	public Object[] unmarshalArguments(MessageContext messageContext, ForkJoinPool pool, int chunkSize)
+			throws Exception {
+		Object[] values = ((JaxbPooledPayloadMethodProcessor) argumentResolvers[0]).unmarshalChildElements(
+				messageContext, requestWrapperType, requestElementNames, requestElementTypes,
+				requestElementRepeated, pool, chunkSize);
+		Object[] paramValues = new Object[parameterBindings.length];
+		for (int i = 0; i < requestElementParameters.length; i++) {
+			paramValues[requestElementParameters[i]] = values[i];
+		}
+		for (int i = 0; i < parameterBindings.length; i++) {
+			ParameterBinding binding = parameterBindings[i];
+			if (binding.holder && !WebParam.Mode.IN.equals(binding.mode)) {
+				paramValues[i] = new Holder<Object>(paramValues[i]);
+			} else if (null == paramValues[i]) {
+				paramValues[i] = binding.defaultValue;
+			}
+		}
+		return paramValues;
+	}
+
+	/**
+	 * Invokes the endpoint method with the given arguments.
+	 */
+	public Object invoke(Object[] args) throws Exception {
+		if (null != endpointHandle) {
+			try {
+				return (Object) endpointHandle.invokeExact(methodEndpoint.getBean(), args);
+			} catch (Throwable ex) {
+				throw MethodHandleHelper.rethrow(ex);
+			}
+		}
+		return methodEndpoint.invoke(args);
+	}
+
+	/**
+	 * Wraps the endpoint method return value and the {@code OUT} and
+	 * {@code INOUT} {@link Holder} values into a new {@code @ResponseWrapper}
+	 * bean.
+	 */
+	@SuppressWarnings("unchecked")
+	public Object wrapReturnValue(Object[] arguments, Object returnValue) throws Exception {
+		Object wrapperObject = newResponseWrapper();
+		if (streamedResult && null != returnValue) {
+			returnValue = toDataHandler((InputStream) returnValue);
+		}
+		if (iteratedResult && null != returnValue) {
+			List<Object> items = new ArrayList<Object>();
+			try {
+				for (Iterator<?> iterator = iterate(returnValue); iterator.hasNext();) {
+					items.add(iterator.next());
+				}
+			} finally {
+				closeResult(returnValue);
+			}
+			returnValue = items;
+			if (null != resultGetter) {
+				List<Object> list = (List<Object>) resultGetter.invoke(wrapperObject);
+				list.addAll(items);
+			}
+		}
+		if (null != resultSetterHandle) {
+			try {
+				resultSetterHandle.invokeExact(wrapperObject, returnValue);
+			} catch (Throwable ex) {
+				throw MethodHandleHelper.rethrow(ex);
+			}
+		} else if (null != resultSetter) {
+			resultSetter.invoke(wrapperObject, returnValue);
+		}
+		if (null != parameterBindings) {
+			for (int i = 0; i < parameterBindings.length; i++) {
+				ParameterBinding binding = parameterBindings[i];
+				if (null == binding.setters) {
+					continue;
+				}
+				Object argValue = ((Holder<?>) arguments[i]).value;
+				if (null == argValue) {
+					continue;
+				}
+				binding.set(wrapperObject, argValue);
+			}
+		}
+		return wrapperObject;
+	}
+
+	/**
+	 * Marshals the endpoint method return value and the {@code OUT} and
+	 * {@code INOUT} {@link Holder} values directly into the response payload
+	 * as the children of the response wrapper element, without creating the
+	 * wrapper object.
+	 *
+	 * @return {@code false} if nothing was written because the response
+	 *         payload can not be written as a stream, leaving an iterated
+	 *         return value untouched for {@link #wrapReturnValue}
+	 * @see #isStreamingWrapSupported()
+	 */
+	public boolean marshalReturnValue(MessageContext messageContext, Object[] arguments, Object returnValue)
+			throws Exception {
+		JaxbPooledPayloadMethodProcessor processor = (JaxbPooledPayloadMethodProcessor) returnValueHandler;
+		Result payloadResult = messageContext.getResponse().getPayloadResult();
+		if (!processor.canMarshalChildElements(payloadResult)) {
+			// checked before iterating, as a stream can only be iterated once
+			return false;
+		}
+		QName[] names = new QName[responseElements.length];
+		Class<?>[] types = new Class<?>[responseElements.length];
+		boolean[] nillable = new boolean[responseElements.length];
+		boolean[] repeated = new boolean[responseElements.length];
+		Object[] values = new Object[responseElements.length];
+		for (int i = 0; i < responseElements.length; i++) {
+			ResponseElement element = responseElements[i];
+			names[i] = element.name;
+			types[i] = element.type;
+			nillable[i] = element.nillable;
+			repeated[i] = element.repeated;
+			if (element.parameterIndex >= 0) {
+				values[i] = ((Holder<?>) arguments[element.parameterIndex]).value;
+			} else {
+				values[i] = iteratedResult && null != returnValue ? iterate(returnValue) : returnValue;
+			}
+		}
+		try {
+			return processor.marshalChildElements(messageContext, payloadResult, responseWrapperType,
+					responseWrapperName, names, types, nillable, repeated, values);
+		} finally {
+			if (iteratedResult) {
+				closeResult(returnValue);
+			}
+		}
+	}
+
+	/**
+	 * Handles the payload return value with the chosen handler.
+	 */
+	public void handleReturnValue(MessageContext messageContext, Object returnValue) throws Exception {
+		if (null == returnValueHandler) {
+			throw new IllegalStateException(
+					"Return value [" + returnValue + "] not resolved by any MethodReturnValueHandler");
+		}
+		returnValueHandler.handleReturnValue(messageContext, returnType, returnValue);
+	}
+
+	private Object newResponseWrapper() throws Exception {
+		if (null != responseWrapperConstructor) {
+			try {
+				return (Object) responseWrapperConstructor.invokeExact();
+			} catch (Throwable ex) {
+				throw MethodHandleHelper.rethrow(ex);
+			}
+		}
+		return responseWrapperType.newInstance();
+	}
+
+	private static DataHandler toDataHandler(InputStream inputStream) {
+		return new DataHandler(new InputStreamDataSource(inputStream));
+	}
+
+	private static final class ParameterBinding {
+
+		final WebParam.Mode mode;
+		final boolean holder;
+		final boolean streamed;
+		final Method getter;
+		final MethodHandle getterHandle;
+		final Method[] setters;
+		final Class<?>[] setterTypes;
+		final MethodHandle[] setterHandles;
+		final QName elementName;
+		final Class<?> elementType;
+		final boolean repeated;
+		final Object defaultValue;
+		final ResponseElement responseElement;
+
+		ParameterBinding(WebParam.Mode mode, boolean holder, boolean streamed, Method getter,
+				MethodHandle getterHandle, Method[] setters, MethodHandle[] setterHandles, QName elementName,
+				Class<?> elementType, boolean repeated, Object defaultValue, ResponseElement responseElement) {
+			this.mode = mode;
+			this.holder = holder;
+			this.streamed = streamed;
+			this.getter = getter;
+			this.getterHandle = getterHandle;
+			this.setters = setters;
+			this.setterTypes = null != setters ? new Class<?>[setters.length] : null;
+			for (int i = 0; null != setters && i < setters.length; i++) {
+				this.setterTypes[i] = setters[i].getParameterTypes()[0];
+			}
+			this.setterHandles = setterHandles;
+			this.elementName = elementName;
+			this.elementType = elementType;
+			this.repeated = repeated;
+			this.defaultValue = defaultValue;
+			this.responseElement = responseElement;
+		}
+
+		Object get(Object target) throws Exception {
+			Object value;
+			if (null != getterHandle) {
+				try {
+					value = (Object) getterHandle.invokeExact(target);
+				} catch (Throwable ex) {
+					throw MethodHandleHelper.rethrow(ex);
+				}
+			} else {
+				value = getter.invoke(target);
+			}
+			if (streamed && null != value) {
+				return ((DataHandler) value).getInputStream();
+			}
+			return value;
+		}
+
+		void set(Object target, Object value) throws Exception {
+			int index = findSetter(value);
+			if (index < 0 && value instanceof InputStream) {
+				value = toDataHandler((InputStream) value);
+				index = findSetter(value);
+			}
+			if (index < 0) {
+				return;
+			}
+			if (null != setterHandles && null != setterHandles[index]) {
+				try {
+					setterHandles[index].invokeExact(target, value);
+				} catch (Throwable ex) {
+					throw MethodHandleHelper.rethrow(ex);
+				}
+			} else {
+				setters[index].invoke(target, value);
+			}
+		}
+
+		private int findSetter(Object value) {
+			for (int i = 0; i < setters.length; i++) {
+				if (ClassUtils.isAssignableValue(setterTypes[i], value)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * A child of the response wrapper element, holding the result or the value
+	 * of an {@code OUT} or {@code INOUT} parameter.
+	 */
+	private static final class ResponseElement {
+
+		final QName name;
+		final Class<?> type;
+		final boolean nillable;
+		final boolean repeated;
+		final String propertyName;
+		final int parameterIndex;
+
+		ResponseElement(QName name, Class<?> type, boolean nillable, boolean repeated, String propertyName,
+				int parameterIndex) {
+			this.name = name;
+			this.type = type;
+			this.nillable = nillable;
+			this.repeated = repeated;
+			this.propertyName = propertyName;
+			this.parameterIndex = parameterIndex;
+		}
+	}
+}
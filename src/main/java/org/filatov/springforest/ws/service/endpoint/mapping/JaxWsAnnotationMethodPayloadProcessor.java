@@ -2,21 +2,23 @@ package org.filatov.springforest.ws.service.endpoint.mapping;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
-import java.lang.reflect.Parameter;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
 
-import javax.jws.WebParam;
-import javax.jws.WebResult;
-import javax.xml.ws.Holder;
+import javax.xml.bind.JAXBException;
 import javax.xml.ws.RequestWrapper;
 import javax.xml.ws.ResponseWrapper;
 
+import org.filatov.springforest.ws.service.endpoint.mapping.JaxWsAnnotationMethodInvocationPlan.InvocationMode;
+import org.filatov.springforest.ws.service.endpoint.mapping.util.FutureHelper;
 import org.filatov.springforest.ws.service.endpoint.mapping.util.JaxWsAnnotationHelper;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.core.MethodParameter;
 import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
 import org.springframework.ws.context.MessageContext;
 import org.springframework.ws.server.endpoint.MethodEndpoint;
 import org.springframework.ws.server.endpoint.adapter.method.MethodArgumentResolver;
@@ -25,108 +27,324 @@ import org.springframework.ws.server.endpoint.annotation.RequestPayload;
 import org.springframework.ws.server.endpoint.annotation.ResponsePayload;
 
 @Component
-public class JaxWsAnnotationMethodPayloadProcessor extends JaxWsAnnotationMethodEndpointAdapter {
+public class JaxWsAnnotationMethodPayloadProcessor extends JaxWsAnnotationMethodEndpointAdapter
+		implements ApplicationListener<ContextRefreshedEvent> {
+
+	/** Default number of repeated items per chunk unmarshalled in parallel. */
+	public static final int DEFAULT_PARALLEL_UNWRAP_CHUNK_SIZE = 256;
+
+	private final ConcurrentMap<MethodEndpoint, JaxWsAnnotationMethodInvocationPlan> invocationPlans = new ConcurrentHashMap<MethodEndpoint, JaxWsAnnotationMethodInvocationPlan>();
+
+	private InvocationMode invocationMode = InvocationMode.METHOD_HANDLE;
+
+	private long invocationTimeout;
+
+	private boolean streamingUnwrap = false;
+
+	private boolean streamingWrap = false;
+
+	private boolean parallelUnwrap = false;
+
+	private ForkJoinPool parallelUnwrapPool;
+
+	private int parallelUnwrapChunkSize = DEFAULT_PARALLEL_UNWRAP_CHUNK_SIZE;
+
+	/**
+	 * Returns the way endpoint methods and wrapper members are invoked.
+	 */
+	public InvocationMode getInvocationMode() {
+		return invocationMode;
+	}
+
+	/**
+	 * Sets the way endpoint methods and wrapper members are invoked. Defaults
+	 * to {@link InvocationMode#METHOD_HANDLE}, members which can not be bound
+	 * into method handles are invoked reflectively.
+	 */
+	public void setInvocationMode(InvocationMode invocationMode) {
+		this.invocationMode = invocationMode;
+		invocationPlans.clear();
+	}
+
+	/**
+	 * Returns the maximum time in milliseconds to wait for the future returned
+	 * by an asynchronous endpoint method.
+	 */
+	public long getInvocationTimeout() {
+		return invocationTimeout;
+	}
+
+	/**
+	 * Sets the maximum time in milliseconds to wait for the future returned by
+	 * an asynchronous endpoint method. Non-positive values, the default, wait
+	 * indefinitely.
+	 */
+	public void setInvocationTimeout(long invocationTimeout) {
+		this.invocationTimeout = invocationTimeout;
+	}
+
+	/**
+	 * Returns {@code true} if arguments are unmarshalled directly from the
+	 * child elements of the request wrapper element.
+	 */
+	public boolean isStreamingUnwrap() {
+		return streamingUnwrap;
+	}
+
+	/**
+	 * Sets whether arguments are unmarshalled directly from the child elements
+	 * of the request wrapper element, skipping elements the method does not
+	 * declare, instead of unmarshalling the {@code @RequestWrapper} bean and
+	 * reading its properties. Applies to methods whose {@code IN} and
+	 * {@code INOUT} parameters are bound to plain {@code @XmlElement}
+	 * properties and whose wrapper is unmarshalled by the default
+	 * {@link JaxbPooledPayloadMethodProcessor}; other methods unmarshal the
+	 * wrapper bean, as do methods whose payload is validated. Defaults to
+	 * {@code false}.
+	 */
+	public void setStreamingUnwrap(boolean streamingUnwrap) {
+		this.streamingUnwrap = streamingUnwrap;
+	}
+
+	/**
+	 * Returns {@code true} if return values are marshalled directly as the
+	 * children of the response wrapper element.
+	 */
+	public boolean isStreamingWrap() {
+		return streamingWrap;
+	}
+
+	/**
+	 * Sets whether the return value and the {@code OUT} and {@code INOUT}
+	 * values are marshalled directly into the response payload as the
+	 * children of the response wrapper element, instead of creating the
+	 * {@code @ResponseWrapper} bean and marshalling it. Applies to methods
+	 * whose results are bound to plain {@code @XmlElement} properties and
+	 * whose wrapper is marshalled by the default
+	 * {@link JaxbPooledPayloadMethodProcessor}, when the payload can be written
+	 * through an {@code XMLStreamWriter}; other methods marshal the wrapper
+	 * bean. Defaults to {@code false}; results of methods returning a
+	 * {@code Stream} or an {@code Iterator} are always marshalled directly
+	 * when possible.
+	 */
+	public void setStreamingWrap(boolean streamingWrap) {
+		this.streamingWrap = streamingWrap;
+	}
+
+	/**
+	 * Returns {@code true} if large repeated request elements are
+	 * unmarshalled in parallel.
+	 */
+	public boolean isParallelUnwrap() {
+		return parallelUnwrap;
+	}
+
+	/**
+	 * Sets whether the items of {@code List} parameters bound to repeated
+	 * request wrapper children are unmarshalled in parallel. Items beyond the
+	 * first {@linkplain #setParallelUnwrapChunkSize(int) chunk} are split into
+	 * chunks while the payload is read, and each chunk is unmarshalled on the
+	 * {@linkplain #setParallelUnwrapPool(ForkJoinPool) pool}. Applies to the
+	 * methods supported by {@linkplain #setStreamingUnwrap(boolean) streaming
+	 * unwrap}, whose arguments are then unmarshalled directly even if
+	 * streaming unwrap is off. Defaults to {@code false}.
+	 */
+	public void setParallelUnwrap(boolean parallelUnwrap) {
+		this.parallelUnwrap = parallelUnwrap;
+	}
+
+	/**
+	 * Returns the pool repeated items are unmarshalled on, or {@code null} for
+	 * the common pool.
+	 */
+	public ForkJoinPool getParallelUnwrapPool() {
+		return parallelUnwrapPool;
+	}
+
+	/**
+	 * Sets the pool repeated items are unmarshalled on. Defaults to the
+	 * {@linkplain ForkJoinPool#commonPool() common pool}.
+	 */
+	public void setParallelUnwrapPool(ForkJoinPool parallelUnwrapPool) {
+		this.parallelUnwrapPool = parallelUnwrapPool;
+	}
+
+	/**
+	 * Returns the number of repeated items per chunk.
+	 */
+	public int getParallelUnwrapChunkSize() {
+		return parallelUnwrapChunkSize;
+	}
+
+	/**
+	 * Sets the number of repeated items per chunk, which is also the number of
+	 * items below which a repeated element is unmarshalled on the dispatching
+	 * thread only. Defaults to {@value #DEFAULT_PARALLEL_UNWRAP_CHUNK_SIZE}.
+	 */
+	public void setParallelUnwrapChunkSize(int parallelUnwrapChunkSize) {
+		Assert.isTrue(parallelUnwrapChunkSize > 0, "parallelUnwrapChunkSize must be positive");
+		this.parallelUnwrapChunkSize = parallelUnwrapChunkSize;
+	}
+
+	@Override
+	public void setMethodArgumentResolvers(List<MethodArgumentResolver> methodArgumentResolvers) {
+		super.setMethodArgumentResolvers(methodArgumentResolvers);
+		invocationPlans.clear();
+	}
+
+	@Override
+	public void setMethodReturnValueHandlers(List<MethodReturnValueHandler> methodReturnValueHandlers) {
+		super.setMethodReturnValueHandlers(methodReturnValueHandlers);
+		invocationPlans.clear();
+	}
+
+	/**
+	 * Builds the invocation plans of all endpoints registered by the
+	 * {@link JaxWsAnnotationMethodEndpointMapping}s of the refreshed context,
+	 * so wrapper classes are loaded and payload strategies, such as JAXB
+	 * contexts, are prepared before the first request. The fault mappings of
+	 * their {@code @WebFault} exceptions are resolved as well when
+	 * {@linkplain #setWebFaultsEnabled(boolean) enabled}.
+	 */
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		for (JaxWsAnnotationMethodEndpointMapping endpointMapping : event.getApplicationContext()
+				.getBeansOfType(JaxWsAnnotationMethodEndpointMapping.class).values()) {
+			for (MethodEndpoint methodEndpoint : endpointMapping.getRegisteredEndpoints().values()) {
+				try {
+					getInvocationPlan(methodEndpoint);
+					if (isWebFaultsEnabled()) {
+						getWebFaultMappings(methodEndpoint);
+					}
+				} catch (Exception e) {
+					logger.error("Could not build invocation plan of " + methodEndpoint, e);
+				}
+			}
+		}
+	}
 
 	@Override
 	protected boolean supportsInternal(MethodEndpoint methodEndpoint) {
 		boolean supportsInternal = false;
 		try {
-			supportsInternal = null != JaxWsAnnotationHelper.getMethodAnnotation(methodEndpoint.getMethod(),
-					RequestWrapper.class) && supportsParameters(getParameters(methodEndpoint))
-					&& supportsReturnType(getReturnType(methodEndpoint));
+			JaxWsAnnotationMethodInvocationPlan invocationPlan = getInvocationPlan(methodEndpoint);
+			supportsInternal = invocationPlan.isRequestWrapped() && invocationPlan.isSupported();
 		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
+			logger.error("Wrapper class of " + methodEndpoint + " not found", e);
+		} catch (IllegalArgumentException e) {
+			logger.error("Parameters of " + methodEndpoint + " can not be bound to its wrappers", e);
 		}
 		return supportsInternal;
 	}
 
-	private boolean supportsParameters(MethodParameter[] methodParameters) {
-		for (MethodParameter methodParameter : methodParameters) {
-			boolean supported = false;
-			for (MethodArgumentResolver methodArgumentResolver : getMethodArgumentResolvers()) {
-				if (logger.isTraceEnabled()) {
-					logger.trace("Testing if argument resolver [" + methodArgumentResolver + "] supports ["
-							+ methodParameter.getGenericParameterType() + "]");
-				}
-				if (methodArgumentResolver.supportsParameter(methodParameter)) {
-					supported = true;
-					break;
-				}
-			}
-			if (!supported) {
-				return false;
+	/**
+	 * Returns the invocation plan of the given method endpoint, building and
+	 * caching it on first use.
+	 *
+	 * @param methodEndpoint
+	 *            the method endpoint to get the plan for
+	 * @return the invocation plan
+	 * @throws ClassNotFoundException
+	 *             if a wrapper class can not be loaded
+	 */
+	protected JaxWsAnnotationMethodInvocationPlan getInvocationPlan(MethodEndpoint methodEndpoint)
+			throws ClassNotFoundException {
+		JaxWsAnnotationMethodInvocationPlan invocationPlan = invocationPlans.get(methodEndpoint);
+		if (null == invocationPlan) {
+			invocationPlan = createInvocationPlan(methodEndpoint);
+			JaxWsAnnotationMethodInvocationPlan existing = invocationPlans.putIfAbsent(methodEndpoint,
+					invocationPlan);
+			if (null != existing) {
+				invocationPlan = existing;
 			}
 		}
-		return true;
+		return invocationPlan;
 	}
 
-	private boolean supportsReturnType(MethodParameter methodReturnType) {
-		if (Void.TYPE.equals(methodReturnType.getParameterType())) {
-			return true;
+	private JaxWsAnnotationMethodInvocationPlan createInvocationPlan(MethodEndpoint methodEndpoint)
+			throws ClassNotFoundException {
+		MethodParameter[] parameters = getParameters(methodEndpoint);
+		MethodArgumentResolver[] argumentResolvers = new MethodArgumentResolver[parameters.length];
+		for (int i = 0; i < parameters.length; i++) {
+			argumentResolvers[i] = findMethodArgumentResolver(parameters[i]);
+		}
+		MethodParameter returnType = getReturnType(methodEndpoint);
+		MethodReturnValueHandler returnValueHandler = null;
+		if (!Void.TYPE.equals(returnType.getParameterType())) {
+			returnValueHandler = findMethodReturnValueHandler(returnType);
 		}
-		for (MethodReturnValueHandler methodReturnValueHandler : getMethodReturnValueHandlers()) {
-			if (methodReturnValueHandler.supportsReturnType(methodReturnType)) {
-				return true;
+		JaxWsAnnotationMethodInvocationPlan invocationPlan = new JaxWsAnnotationMethodInvocationPlan(methodEndpoint,
+				parameters, argumentResolvers, returnType, returnValueHandler, invocationMode);
+		if (invocationPlan.isValidated()) {
+			compileSchemas(invocationPlan, parameters, argumentResolvers);
+		}
+		return invocationPlan;
+	}
+
+	/**
+	 * Compiles the schemas of a validated plan up front, so the first request
+	 * does not pay for it.
+	 */
+	private void compileSchemas(JaxWsAnnotationMethodInvocationPlan invocationPlan, MethodParameter[] parameters,
+			MethodArgumentResolver[] argumentResolvers) {
+		boolean validated = false;
+		for (int i = 0; i < parameters.length; i++) {
+			if (argumentResolvers[i] instanceof JaxbPooledPayloadMethodProcessor) {
+				validated = true;
+				try {
+					((JaxbPooledPayloadMethodProcessor) argumentResolvers[i])
+							.getSchema(parameters[i].getParameterType());
+				} catch (JAXBException ex) {
+					logger.error("Could not compile schema of " + invocationPlan.getMethodEndpoint(), ex);
+				}
 			}
 		}
-		return false;
+		if (!validated) {
+			logger.warn("Payload of " + invocationPlan.getMethodEndpoint()
+					+ " is not unmarshalled by JaxbPooledPayloadMethodProcessor and can not be validated");
+		}
+	}
+
+	/**
+	 * Invokes the endpoint method through its invocation plan. The
+	 * {@code CompletionStage} or {@code Future} returned by asynchronous
+	 * endpoint methods is awaited, so its value is wrapped and marshalled like
+	 * a synchronous return value. Spring-WS dispatches synchronously, so the
+	 * dispatching thread is held until the future completes; asynchronous
+	 * endpoint methods let endpoints compose their work, they do not release
+	 * the container thread.
+	 */
+	@Override
+	protected Object invokeMethod(MethodEndpoint methodEndpoint, Object[] args) throws Exception {
+		JaxWsAnnotationMethodInvocationPlan invocationPlan = getInvocationPlan(methodEndpoint);
+		Object returnValue = invocationPlan.invoke(args);
+		if (invocationPlan.isAsynchronous()) {
+			returnValue = FutureHelper.await(returnValue, invocationTimeout);
+		}
+		return returnValue;
 	}
 
 	@Override
 	protected Object[] getMethodArguments(MessageContext messageContext, MethodEndpoint methodEndpoint)
 			throws Exception {
-
-		MethodParameter[] parameters = getParameters(methodEndpoint);
-
-		Object[] args = new Object[parameters.length];
-		for (int i = 0; i < parameters.length; i++) {
-			for (MethodArgumentResolver methodArgumentResolver : getMethodArgumentResolvers()) {
-				if (methodArgumentResolver.supportsParameter(parameters[i])) {
-					args[i] = methodArgumentResolver.resolveArgument(messageContext, parameters[i]);
-					break;
-				}
+		JaxWsAnnotationMethodInvocationPlan invocationPlan = getInvocationPlan(methodEndpoint);
+		if ((streamingUnwrap || parallelUnwrap) && invocationPlan.isStreamingUnwrapSupported()) {
+			if (parallelUnwrap) {
+				ForkJoinPool pool = null != parallelUnwrapPool ? parallelUnwrapPool : ForkJoinPool.commonPool();
+				return invocationPlan.unmarshalArguments(messageContext, pool, parallelUnwrapChunkSize);
 			}
+			return invocationPlan.unmarshalArguments(messageContext);
 		}
-
-		Method method = methodEndpoint.getMethod();
-		RequestWrapper requestWrapper = JaxWsAnnotationHelper.getMethodAnnotation(method, RequestWrapper.class);
-		if (null != requestWrapper) {
+		Object[] args = invocationPlan.resolveArguments(messageContext);
+		if (invocationPlan.isRequestWrapped()) {
 			if (0 == args.length) {
-				throw new IllegalArgumentException("Empty argument array can not be unwrapped by " + requestWrapper);
+				throw new IllegalArgumentException(
+						"Empty argument array can not be unwrapped by " + invocationPlan.getRequestWrapperType());
 			}
 			if (null == args[0]) {
-				throw new IllegalArgumentException("Null can not be unwrapped by " + requestWrapper);
-			}
-			Object wrappedParam = args[0];
-			Class<?> wrapperType = wrappedParam.getClass();
-			Parameter[] params = method.getParameters();
-			Object[] paramValues = new Object[params.length];
-			for (int i = 0; i < params.length; i++) {
-				WebParam webParam = JaxWsAnnotationHelper.getParameterAnnotation(method, i, WebParam.class);
-				if (null == webParam.mode() || webParam.mode().equals(WebParam.Mode.IN)
-						|| webParam.mode().equals(WebParam.Mode.INOUT)) {
-					if (null == webParam) {
-						throw new IllegalArgumentException(
-								"WebParam annotation not found in " + method + " for param " + i);
-					}
-					String name = webParam.name();
-					Method getter = wrapperType.getMethod("get" + capitalize(name));
-					if (webParam.mode().equals(WebParam.Mode.INOUT)) {
-						if (params[i].getType().equals(Holder.class)) {
-							Holder holder = Holder.class.newInstance();
-							holder.value = getter.invoke(wrappedParam);
-							paramValues[i] = holder;
-						}
-					} else {
-						paramValues[i] = getter.invoke(wrappedParam);
-					}
-				} else if (webParam.mode().equals(WebParam.Mode.OUT)) {
-					if (params[i].getType().equals(Holder.class)) {
-						paramValues[i] = Holder.class.newInstance();
-					}
-				}
+				throw new IllegalArgumentException(
+						"Null can not be unwrapped by " + invocationPlan.getRequestWrapperType());
 			}
-			args = paramValues;
+			args = invocationPlan.unwrapArguments(args[0]);
 		}
 		return args;
 	}
@@ -159,6 +377,16 @@ public class JaxWsAnnotationMethodPayloadProcessor extends JaxWsAnnotationMethod
 
 			};
 		}
+		if (FutureHelper.isAsynchronous(method)) {
+			final Class<?> resultType = FutureHelper.getResultType(method);
+			return new MethodParameter(method, -1) {
+
+				@Override
+				public Class<?> getParameterType() {
+					return resultType;
+				}
+			};
+		}
 		return methodEndpoint.getReturnType();
 	}
 
@@ -191,82 +419,19 @@ public class JaxWsAnnotationMethodPayloadProcessor extends JaxWsAnnotationMethod
 		}
 	}
 
-	private String capitalize(String str) {
-		if (null == str || 0 == str.length()) {
-			return str;
-		}
-		int strLen = str.length();
-		StringBuffer buffer = new StringBuffer(strLen);
-		for (int i = 0; i < strLen; i++) {
-			if (0 == i) {
-				buffer.append(Character.toTitleCase(str.charAt(i)));
-			} else {
-				buffer.append(str.charAt(i));
-			}
-		}
-		return buffer.toString();
-	}
-
-	private Map<String, List<Method>> mapMethods(Method[] methods) {
-		Map<String, List<Method>> map = new HashMap<String, List<Method>>();
-		for (int i = 0; i < methods.length; i++) {
-			List<Method> list = map.get(methods[i].getName());
-			if (null == list) {
-				list = new ArrayList<Method>();
-				map.put(methods[i].getName(), list);
-			}
-			list.add(methods[i]);
-		}
-		return map;
-	}
-
 	@Override
 	protected void handleMethodReturnValue(MessageContext messageContext, Object[] arguments, Object returnValue,
 			MethodEndpoint methodEndpoint) throws Exception {
-		Method method = methodEndpoint.getMethod();
-		ResponseWrapper responseWrapper = JaxWsAnnotationHelper.getMethodAnnotation(method, ResponseWrapper.class);
-		MethodParameter returnType = getReturnType(methodEndpoint);
-		if (!Void.TYPE.equals(returnType.getParameterType())) {
-			if (null != responseWrapper) {
-				Class<?> wrapperType = Class.forName(responseWrapper.className());
-				Object wrapperObject = wrapperType.newInstance();
-				if (!Void.TYPE.equals(method.getReturnType())) {
-					WebResult webResult = JaxWsAnnotationHelper.getMethodAnnotation(method, WebResult.class);
-					Method setter = wrapperType.getMethod("set" + capitalize(webResult.name()), method.getReturnType());
-					setter.invoke(wrapperObject, returnValue);
-				}
-				Parameter[] parameters = method.getParameters();
-				Map<String, List<Method>> methodMap = mapMethods(wrapperType.getMethods());
-				for (int i = 0; i < parameters.length; i++) {
-					WebParam webParam = JaxWsAnnotationHelper.getParameterAnnotation(method, i, WebParam.class);
-					if (webParam.mode().equals(WebParam.Mode.OUT) || webParam.mode().equals(WebParam.Mode.INOUT)) {
-						if (!parameters[i].getType().equals(Holder.class)) {
-							throw new IllegalArgumentException("Output values should be placed at holders");
-						}
-						Object argValue = ((Holder<?>) arguments[i]).value;
-						List<Method> setters = methodMap.get("set" + capitalize(webParam.name()));
-						for (Method setter : setters) {
-							Class<?>[] types = setter.getParameterTypes();
-							if (types.length != 1) {
-								continue;
-							}
-							if (types[0].isAssignableFrom(argValue.getClass())) {
-								setter.invoke(wrapperObject, argValue);
-								break;
-							}
-						}
-					}
-				}
-				returnValue = wrapperObject;
+		JaxWsAnnotationMethodInvocationPlan invocationPlan = getInvocationPlan(methodEndpoint);
+		if (!Void.TYPE.equals(invocationPlan.getReturnType().getParameterType())) {
+			if ((streamingWrap || invocationPlan.isResultIterated()) && invocationPlan.isStreamingWrapSupported()
+					&& invocationPlan.marshalReturnValue(messageContext, arguments, returnValue)) {
+				return;
 			}
-			for (MethodReturnValueHandler methodReturnValueHandler : getMethodReturnValueHandlers()) {
-				if (methodReturnValueHandler.supportsReturnType(returnType)) {
-					methodReturnValueHandler.handleReturnValue(messageContext, returnType, returnValue);
-					return;
-				}
+			if (invocationPlan.isResponseWrapped()) {
+				returnValue = invocationPlan.wrapReturnValue(arguments, returnValue);
 			}
-			throw new IllegalStateException(
-					"Return value [" + returnValue + "] not resolved by any MethodReturnValueHandler");
+			invocationPlan.handleReturnValue(messageContext, returnValue);
 		}
 	}
 
@@ -0,0 +1,1196 @@
+package org.filatov.springforest.ws.service.endpoint.mapping;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import javax.xml.XMLConstants;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.SchemaOutputResolver;
+import javax.xml.bind.UnmarshalException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.Result;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import org.filatov.springforest.ws.service.endpoint.mapping.mime.MimeAttachmentMarshaller;
+import org.filatov.springforest.ws.service.endpoint.mapping.mime.MimeAttachmentUnmarshaller;
+import org.filatov.springforest.ws.service.endpoint.mapping.util.FastInfosetHelper;
+import org.filatov.springforest.ws.service.endpoint.mapping.validation.PayloadValidationException;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.xml.StaxUtils;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.mime.MimeMessage;
+import org.springframework.ws.server.endpoint.adapter.method.AbstractPayloadMethodProcessor;
+import org.springframework.xml.transform.TransformerHelper;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.ls.DOMImplementationLS;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+import org.xml.sax.SAXException;
+
+/**
+ * JAXB payload processor for {@link XmlRootElement} annotated types, such as
+ * {@code @RequestWrapper} and {@code @ResponseWrapper} classes.
+ *
+ * <p>
+ * A {@link JAXBContext} is created once per type, when the type is first
+ * checked for support. As the payload processor checks every wrapper type when
+ * it builds its invocation plans, contexts are usually created at startup.
+ * Marshallers and unmarshallers are kept in bounded pools per type; when a pool
+ * is empty a new instance is created, when it is full a returned instance is
+ * dropped.
+ *
+ * <p>
+ * MTOM and swaRef attachments of {@link MimeMessage}s are resolved when
+ * unmarshalling. When {@linkplain #setMtomEnabled(boolean) MTOM is enabled},
+ * binary content of responses is written as XOP attachments instead of
+ * inline base64 text.
+ *
+ * <p>
+ * {@link #unmarshalChildElements} binds the children of a wrapper element
+ * directly, without creating the wrapper object, and
+ * {@link #marshalChildElements} writes a wrapper element and its children
+ * straight into the response payload. Large repeated children can be split
+ * into chunks unmarshalled in parallel on a {@link ForkJoinPool}. Stream
+ * payloads holding a Fast Infoset document are read with a Fast Infoset
+ * parser.
+ *
+ * <p>
+ * Payloads can be {@linkplain #resolveArgument(MessageContext, MethodParameter, boolean)
+ * validated} while they are unmarshalled, against the schema compiled from the
+ * {@linkplain #setSchemaLocations(Resource...) schema locations} or else from
+ * the JAXB metadata of the type. Schemas are compiled once.
+ */
+public class JaxbPooledPayloadMethodProcessor extends AbstractPayloadMethodProcessor {
+
+	/** Default maximum number of pooled marshallers and unmarshallers per type. */
+	public static final int DEFAULT_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+	private static final String ROOT_PREFIX = "ns1";
+
+	/** Root element of the chunks of repeated items unmarshalled in parallel. */
+	private static final String CHUNK_ELEMENT = "chunk";
+
+	private static final byte[] CHUNK_END_TAG = ("</" + CHUNK_ELEMENT + ">").getBytes(Charset.forName("UTF-8"));
+
+	/** Base URI of generated schema documents, which refer to each other by file name. */
+	private static final String GENERATED_SCHEMA_BASE = "urn:springforest:ws:schema:";
+
+	private final ConcurrentMap<Class<?>, JaxbPool> jaxbPools = new ConcurrentHashMap<Class<?>, JaxbPool>();
+
+	private int poolSize = DEFAULT_POOL_SIZE;
+
+	private boolean mtomEnabled = false;
+
+	private Resource[] schemaLocations;
+
+	private volatile Schema locationSchema;
+
+	private final XMLInputFactory inputFactory = createXmlInputFactory();
+
+	private final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+	private final XMLOutputFactory chunkOutputFactory = createChunkOutputFactory();
+
+	private final TransformerHelper transformerHelper = new TransformerHelper();
+
+	public JaxbPooledPayloadMethodProcessor() {
+	}
+
+	public JaxbPooledPayloadMethodProcessor(int poolSize) {
+		setPoolSize(poolSize);
+	}
+
+	/**
+	 * Returns the maximum number of pooled marshallers and unmarshallers per
+	 * type.
+	 */
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	/**
+	 * Sets the maximum number of pooled marshallers and unmarshallers per type.
+	 * Defaults to the number of available processors.
+	 */
+	public void setPoolSize(int poolSize) {
+		Assert.isTrue(poolSize > 0, "poolSize must be positive");
+		this.poolSize = poolSize;
+		jaxbPools.clear();
+	}
+
+	/**
+	 * Returns {@code true} if binary content of responses is written as XOP
+	 * attachments.
+	 */
+	public boolean isMtomEnabled() {
+		return mtomEnabled;
+	}
+
+	/**
+	 * Sets whether binary content of responses is written as XOP attachments.
+	 * Defaults to {@code false}.
+	 */
+	public void setMtomEnabled(boolean mtomEnabled) {
+		this.mtomEnabled = mtomEnabled;
+	}
+
+	/**
+	 * Returns the locations of the schemas payloads are validated against, or
+	 * {@code null} if schemas are generated from the JAXB metadata.
+	 */
+	public Resource[] getSchemaLocations() {
+		return schemaLocations;
+	}
+
+	/**
+	 * Sets the locations of the XSD schemas payloads are validated against.
+	 * By default, the schema of each type is generated from its JAXB
+	 * metadata.
+	 */
+	public void setSchemaLocations(Resource... schemaLocations) {
+		this.schemaLocations = schemaLocations;
+		this.locationSchema = null;
+	}
+
+	@Override
+	protected boolean supportsRequestPayloadParameter(MethodParameter parameter) {
+		return supportsType(parameter.getParameterType());
+	}
+
+	@Override
+	protected boolean supportsResponsePayloadReturnType(MethodParameter returnType) {
+		return supportsType(returnType.getParameterType());
+	}
+
+	private boolean supportsType(Class<?> type) {
+		if (null == type.getAnnotation(XmlRootElement.class)) {
+			return false;
+		}
+		try {
+			getJaxbPool(type);
+			return true;
+		} catch (JAXBException ex) {
+			logger.error("Could not create JAXBContext for " + type, ex);
+			return false;
+		}
+	}
+
+	public Object resolveArgument(MessageContext messageContext, MethodParameter parameter) throws JAXBException {
+		return resolveArgument(messageContext, parameter, false);
+	}
+
+	/**
+	 * Unmarshals the request payload, validating it in the same pass if
+	 * requested.
+	 *
+	 * @throws PayloadValidationException
+	 *             if the payload is validated and does not conform to the
+	 *             schema of the parameter type
+	 * @throws ActionMismatchException
+	 *             if the request was looked up by its action and its payload
+	 *             root is not the operation element of the action
+	 * @see #getSchema(Class)
+	 */
+	public Object resolveArgument(MessageContext messageContext, MethodParameter parameter, boolean validate)
+			throws JAXBException {
+		Class<?> type = parameter.getParameterType();
+		WebServiceMessage request = messageContext.getRequest();
+		Source source = request.getPayloadSource();
+		if (null == source) {
+			return null;
+		}
+		JaxbPool jaxbPool = getJaxbPool(type);
+		Unmarshaller unmarshaller = jaxbPool.borrowUnmarshaller();
+		if (request instanceof MimeMessage) {
+			unmarshaller.setAttachmentUnmarshaller(new MimeAttachmentUnmarshaller((MimeMessage) request));
+		}
+		if (validate) {
+			unmarshaller.setSchema(getSchema(jaxbPool));
+		}
+		try {
+			JAXBElement<?> element = null;
+			if (StaxUtils.isStaxSource(source)) {
+				XMLStreamReader streamReader = StaxUtils.getXMLStreamReader(source);
+				if (null != streamReader) {
+					element = unmarshaller.unmarshal(streamReader, type);
+				} else {
+					XMLEventReader eventReader = StaxUtils.getXMLEventReader(source);
+					if (null != eventReader) {
+						element = unmarshaller.unmarshal(eventReader, type);
+					}
+				}
+			}
+			if (null == element) {
+				element = unmarshaller.unmarshal(source, type);
+			}
+			checkPayloadRoot(messageContext, element.getName());
+			return element.getValue();
+		} catch (UnmarshalException ex) {
+			if (validate) {
+				Throwable cause = null != ex.getLinkedException() ? ex.getLinkedException() : ex;
+				throw new PayloadValidationException("Invalid request payload: " + cause.getMessage(), ex);
+			}
+			throw ex;
+		} finally {
+			if (request instanceof MimeMessage) {
+				unmarshaller.setAttachmentUnmarshaller(null);
+			}
+			if (validate) {
+				unmarshaller.setSchema(null);
+			}
+			jaxbPool.releaseUnmarshaller(unmarshaller);
+		}
+	}
+
+	/**
+	 * Returns the schema payloads of the given type are validated against,
+	 * compiling it if necessary: the schema of the
+	 * {@linkplain #setSchemaLocations(Resource...) schema locations}, or else
+	 * the schema generated from the JAXB metadata of the type.
+	 */
+	public Schema getSchema(Class<?> type) throws JAXBException {
+		return getSchema(getJaxbPool(type));
+	}
+
+	private Schema getSchema(JaxbPool jaxbPool) throws JAXBException {
+		Resource[] schemaLocations = this.schemaLocations;
+		if (null != schemaLocations) {
+			Schema schema = locationSchema;
+			if (null == schema) {
+				schema = compileSchema(schemaLocations);
+				locationSchema = schema;
+			}
+			return schema;
+		}
+		Schema schema = jaxbPool.schema;
+		if (null == schema) {
+			schema = generateSchema(jaxbPool.jaxbContext);
+			jaxbPool.schema = schema;
+		}
+		return schema;
+	}
+
+	private Schema compileSchema(Resource[] schemaLocations) throws JAXBException {
+		if (logger.isDebugEnabled()) {
+			logger.debug("Compiling schema of " + Arrays.asList(schemaLocations));
+		}
+		try {
+			Source[] sources = new Source[schemaLocations.length];
+			for (int i = 0; i < schemaLocations.length; i++) {
+				sources[i] = new StreamSource(schemaLocations[i].getInputStream(),
+						schemaLocations[i].getURL().toExternalForm());
+			}
+			return SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(sources);
+		} catch (IOException ex) {
+			throw new JAXBException("Could not read schema", ex);
+		} catch (SAXException ex) {
+			throw new JAXBException("Could not compile schema", ex);
+		}
+	}
+
+	private Schema generateSchema(JAXBContext jaxbContext) throws JAXBException {
+		if (logger.isDebugEnabled()) {
+			logger.debug("Generating schema of " + jaxbContext);
+		}
+		final Map<String, StringWriter> documents = new LinkedHashMap<String, StringWriter>();
+		try {
+			jaxbContext.generateSchema(new SchemaOutputResolver() {
+
+				@Override
+				public Result createOutput(String namespaceUri, String suggestedFileName) {
+					StringWriter writer = new StringWriter();
+					documents.put(suggestedFileName, writer);
+					StreamResult result = new StreamResult(writer);
+					result.setSystemId(GENERATED_SCHEMA_BASE + suggestedFileName);
+					return result;
+				}
+			});
+			List<Source> sources = new ArrayList<Source>();
+			for (Map.Entry<String, StringWriter> document : documents.entrySet()) {
+				sources.add(new StreamSource(new StringReader(document.getValue().toString()),
+						GENERATED_SCHEMA_BASE + document.getKey()));
+			}
+			final DOMImplementationLS domImplementation = (DOMImplementationLS) DocumentBuilderFactory.newInstance()
+					.newDocumentBuilder().getDOMImplementation();
+			SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+			schemaFactory.setResourceResolver(new LSResourceResolver() {
+
+				public LSInput resolveResource(String type, String namespaceUri, String publicId, String systemId,
+						String baseUri) {
+					if (null == systemId) {
+						return null;
+					}
+					String fileName = systemId.startsWith(GENERATED_SCHEMA_BASE)
+							? systemId.substring(GENERATED_SCHEMA_BASE.length()) : systemId;
+					StringWriter document = documents.get(fileName);
+					if (null == document) {
+						return null;
+					}
+					LSInput input = domImplementation.createLSInput();
+					input.setSystemId(GENERATED_SCHEMA_BASE + fileName);
+					input.setStringData(document.toString());
+					return input;
+				}
+			});
+			return schemaFactory.newSchema(sources.toArray(new Source[sources.size()]));
+		} catch (IOException ex) {
+			throw new JAXBException("Could not generate schema", ex);
+		} catch (ParserConfigurationException ex) {
+			throw new JAXBException("Could not create DOM implementation", ex);
+		} catch (SAXException ex) {
+			throw new JAXBException("Could not compile generated schema", ex);
+		}
+	}
+
+	public void handleReturnValue(MessageContext messageContext, MethodParameter returnType, Object returnValue)
+			throws JAXBException {
+		if (null == returnValue) {
+			return;
+		}
+		WebServiceMessage response = messageContext.getResponse();
+		Result result = response.getPayloadResult();
+		JaxbPool jaxbPool = getJaxbPool(returnValue.getClass());
+		Marshaller marshaller = jaxbPool.borrowMarshaller();
+		if (response instanceof MimeMessage) {
+			marshaller.setAttachmentMarshaller(new MimeAttachmentMarshaller((MimeMessage) response, mtomEnabled));
+		}
+		try {
+			marshaller.marshal(returnValue, result);
+		} finally {
+			if (response instanceof MimeMessage) {
+				marshaller.setAttachmentMarshaller(null);
+			}
+			jaxbPool.releaseMarshaller(marshaller);
+		}
+	}
+
+	/**
+	 * Marshals the given value, such as a fault bean or a {@link JAXBElement},
+	 * to the given result with the pooled marshallers of the given type.
+	 */
+	public void marshal(Object value, Class<?> contextType, Result result) throws JAXBException {
+		JaxbPool jaxbPool = getJaxbPool(contextType);
+		Marshaller marshaller = jaxbPool.borrowMarshaller();
+		try {
+			marshaller.marshal(value, result);
+		} finally {
+			jaxbPool.releaseMarshaller(marshaller);
+		}
+	}
+
+	/**
+	 * Unmarshals the child elements of the request payload root element with
+	 * the context of the given type, such as a {@code @RequestWrapper} class,
+	 * without unmarshalling the root element itself. Children which are not
+	 * listed are skipped; of repeated children the last one is kept.
+	 *
+	 * @param messageContext
+	 *            the current message context
+	 * @param contextType
+	 *            the type whose context knows the element types
+	 * @param elementNames
+	 *            the names of the child elements to unmarshal
+	 * @param elementTypes
+	 *            the declared type of each listed element
+	 * @return the value of each listed element, {@code null} for missing
+	 *         elements
+	 */
+	public Object[] unmarshalChildElements(MessageContext messageContext, Class<?> contextType,
+			QName[] elementNames, Class<?>[] elementTypes)
+			throws JAXBException, XMLStreamException, TransformerException {
+		return unmarshalChildElements(messageContext, contextType, elementNames, elementTypes,
+				new boolean[elementNames.length], null, 0);
+	}
+
+	/**
+	 * Unmarshals the child elements of the request payload root element like
+	 * {@link #unmarshalChildElements(MessageContext, Class, QName[], Class[])},
+	 * collecting all occurrences of repeated children into a {@code List}.
+	 *
+	 * <p>
+	 * When a pool is given, the first {@code chunkSize} items of a repeated
+	 * child are unmarshalled on the calling thread. The following items are
+	 * copied into chunks of {@code chunkSize} items while the payload is read,
+	 * and each chunk is parsed and unmarshalled on the pool; the items are
+	 * collected in document order once the payload is read.
+	 *
+	 * @param messageContext
+	 *            the current message context
+	 * @param contextType
+	 *            the type whose context knows the element types
+	 * @param elementNames
+	 *            the names of the child elements to unmarshal
+	 * @param elementTypes
+	 *            the declared type of each listed element, the item type of
+	 *            repeated elements
+	 * @param repeated
+	 *            whether each child element is repeated
+	 * @param pool
+	 *            the pool unmarshalling chunks of repeated items, or
+	 *            {@code null} to unmarshal every item on the calling thread
+	 * @param chunkSize
+	 *            the number of items per chunk
+	 * @return the value of each listed element, {@code null} for missing
+	 *         elements, a {@code List} of the items of repeated elements
+	 * @throws ActionMismatchException
+	 *             if the request was looked up by its action and its payload
+	 *             root is not the operation element of the action
+	 */
+	public Object[] unmarshalChildElements(MessageContext messageContext, Class<?> contextType,
+			QName[] elementNames, Class<?>[] elementTypes, boolean[] repeated, ForkJoinPool pool, int chunkSize)
+			throws JAXBException, XMLStreamException, TransformerException {
+		Object[] values = new Object[elementNames.length];
+		WebServiceMessage request = messageContext.getRequest();
+		Source source = request.getPayloadSource();
+		RepeatedElement[] repeatedElements = new RepeatedElement[elementNames.length];
+		for (int i = 0; i < elementNames.length; i++) {
+			if (repeated[i]) {
+				values[i] = new ArrayList<Object>();
+			}
+		}
+		if (null == source) {
+			return values;
+		}
+		JaxbPool jaxbPool = getJaxbPool(contextType);
+		Unmarshaller unmarshaller = jaxbPool.borrowUnmarshaller();
+		if (request instanceof MimeMessage) {
+			unmarshaller.setAttachmentUnmarshaller(new MimeAttachmentUnmarshaller((MimeMessage) request));
+		}
+		try {
+			if (!(source instanceof DOMSource)) {
+				XMLStreamReader streamReader = getXMLStreamReader(source);
+				if (null != streamReader) {
+					unmarshalChildElements(messageContext, unmarshaller, streamReader, elementNames, elementTypes,
+							repeated, pool, chunkSize, request, jaxbPool, repeatedElements, values);
+					return completeRepeatedElements(repeatedElements, values);
+				}
+				DOMResult result = new DOMResult();
+				transformerHelper.transform(source, result);
+				source = new DOMSource(result.getNode());
+			}
+			Node root = ((DOMSource) source).getNode();
+			if (root instanceof Document) {
+				root = ((Document) root).getDocumentElement();
+			}
+			checkPayloadRoot(messageContext, new QName(nullToEmpty(root.getNamespaceURI()),
+					null != root.getLocalName() ? root.getLocalName() : root.getNodeName()));
+			for (Node child = root.getFirstChild(); null != child; child = child.getNextSibling()) {
+				if (Node.ELEMENT_NODE != child.getNodeType()) {
+					continue;
+				}
+				String namespaceUri = child.getNamespaceURI();
+				int index = indexOf(elementNames, null != namespaceUri ? namespaceUri : "", child.getLocalName());
+				if (index < 0) {
+					continue;
+				}
+				if (!repeated[index]) {
+					values[index] = unmarshaller.unmarshal(child, elementTypes[index]).getValue();
+				} else if (null == pool || null == repeatedElements[index]
+						&& ((List<?>) values[index]).size() < chunkSize) {
+					addItem(values, index, unmarshaller.unmarshal(child, elementTypes[index]).getValue());
+				} else {
+					if (null == repeatedElements[index]) {
+						repeatedElements[index] = new RepeatedElement(elementTypes[index], getNamespaces(root),
+								pool, chunkSize, request, jaxbPool);
+					}
+					repeatedElements[index].copy(child);
+				}
+			}
+			return completeRepeatedElements(repeatedElements, values);
+		} catch (JAXBException ex) {
+			cancelRepeatedElements(repeatedElements);
+			throw ex;
+		} catch (XMLStreamException ex) {
+			cancelRepeatedElements(repeatedElements);
+			throw ex;
+		} catch (RuntimeException ex) {
+			cancelRepeatedElements(repeatedElements);
+			throw ex;
+		} finally {
+			if (request instanceof MimeMessage) {
+				unmarshaller.setAttachmentUnmarshaller(null);
+			}
+			jaxbPool.releaseUnmarshaller(unmarshaller);
+		}
+	}
+
+	/**
+	 * Checks the payload root of a request looked up by its action to be the
+	 * operation element of the action.
+	 *
+	 * @see JaxWsAnnotationMethodEndpointMapping#ACTION_OPERATION_PROPERTY
+	 */
+	private static void checkPayloadRoot(MessageContext messageContext, QName payloadRoot) {
+		Object operation = messageContext.getProperty(JaxWsAnnotationMethodEndpointMapping.ACTION_OPERATION_PROPERTY);
+		if (null != operation && !operation.equals(payloadRoot)) {
+			throw new ActionMismatchException((QName) operation, payloadRoot);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void addItem(Object[] values, int index, Object item) {
+		((List<Object>) values[index]).add(item);
+	}
+
+	private static Object[] completeRepeatedElements(RepeatedElement[] repeatedElements, Object[] values)
+			throws JAXBException, XMLStreamException {
+		for (int i = 0; i < repeatedElements.length; i++) {
+			if (null != repeatedElements[i]) {
+				repeatedElements[i].complete(values, i);
+			}
+		}
+		return values;
+	}
+
+	private static void cancelRepeatedElements(RepeatedElement[] repeatedElements) {
+		for (RepeatedElement repeatedElement : repeatedElements) {
+			if (null != repeatedElement) {
+				repeatedElement.cancel();
+			}
+		}
+	}
+
+	/**
+	 * Returns the namespace declarations in scope of the given element.
+	 */
+	private static Map<String, String> getNamespaces(Node element) {
+		Map<String, String> namespaces = new LinkedHashMap<String, String>();
+		for (Node node = element; null != node && Node.ELEMENT_NODE == node.getNodeType(); node = node
+				.getParentNode()) {
+			NamedNodeMap attributes = node.getAttributes();
+			for (int i = 0; i < attributes.getLength(); i++) {
+				Node attribute = attributes.item(i);
+				if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI())) {
+					String prefix = XMLConstants.XMLNS_ATTRIBUTE.equals(attribute.getNodeName())
+							? XMLConstants.DEFAULT_NS_PREFIX : attribute.getLocalName();
+					if (!namespaces.containsKey(prefix)) {
+						namespaces.put(prefix, attribute.getNodeValue());
+					}
+				}
+			}
+		}
+		return namespaces;
+	}
+
+	/**
+	 * Returns {@code true} if the given payload result can be written through
+	 * an {@link XMLStreamWriter}, as required by
+	 * {@link #marshalChildElements}.
+	 */
+	public boolean canMarshalChildElements(Result payloadResult) {
+		if (StaxUtils.isStaxResult(payloadResult)) {
+			return null != StaxUtils.getXMLStreamWriter(payloadResult)
+					|| null != StaxUtils.getXMLEventWriter(payloadResult);
+		}
+		return payloadResult instanceof DOMResult || payloadResult instanceof StreamResult;
+	}
+
+	/**
+	 * Writes an element with the given children into the given payload result
+	 * of the response, marshalling each child with the context of the given
+	 * type, such as a {@code @ResponseWrapper} class, as a fragment directly
+	 * into the payload result. Nothing is written if the payload result can
+	 * not be written through an {@link XMLStreamWriter}.
+	 *
+	 * @param messageContext
+	 *            the current message context
+	 * @param payloadResult
+	 *            the payload result of the response
+	 * @param contextType
+	 *            the type whose context knows the element types
+	 * @param rootName
+	 *            the name of the element to write
+	 * @param elementNames
+	 *            the names of the child elements
+	 * @param elementTypes
+	 *            the declared type of each child element
+	 * @param nillable
+	 *            whether each child element is written as nil when its value
+	 *            is {@code null}, rather than omitted
+	 * @param repeated
+	 *            whether each child element is repeated, with an
+	 *            {@link Iterator} of the element values as its value
+	 * @param values
+	 *            the value of each child element
+	 * @return {@code true} if the element was written
+	 */
+	public boolean marshalChildElements(MessageContext messageContext, Result payloadResult, Class<?> contextType,
+			QName rootName, QName[] elementNames, Class<?>[] elementTypes, boolean[] nillable, boolean[] repeated,
+			Object[] values) throws JAXBException, XMLStreamException {
+		WebServiceMessage response = messageContext.getResponse();
+		XMLStreamWriter streamWriter = getXMLStreamWriter(payloadResult);
+		if (null == streamWriter) {
+			return false;
+		}
+		JaxbPool jaxbPool = getJaxbPool(contextType);
+		Marshaller marshaller = jaxbPool.borrowMarshaller();
+		marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+		if (response instanceof MimeMessage) {
+			marshaller.setAttachmentMarshaller(new MimeAttachmentMarshaller((MimeMessage) response, mtomEnabled));
+		}
+		try {
+			if (rootName.getNamespaceURI().isEmpty()) {
+				streamWriter.writeStartElement(rootName.getLocalPart());
+			} else {
+				streamWriter.writeStartElement(ROOT_PREFIX, rootName.getLocalPart(), rootName.getNamespaceURI());
+				streamWriter.writeNamespace(ROOT_PREFIX, rootName.getNamespaceURI());
+			}
+			for (int i = 0; i < elementNames.length; i++) {
+				if (!repeated[i]) {
+					marshalElement(marshaller, streamWriter, elementNames[i], elementTypes[i], nillable[i], values[i]);
+					continue;
+				}
+				for (Iterator<?> items = (Iterator<?>) values[i]; null != items && items.hasNext();) {
+					marshalElement(marshaller, streamWriter, elementNames[i], elementTypes[i], nillable[i],
+							items.next());
+				}
+			}
+			streamWriter.writeEndElement();
+			streamWriter.flush();
+			return true;
+		} finally {
+			if (response instanceof MimeMessage) {
+				marshaller.setAttachmentMarshaller(null);
+			}
+			marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.FALSE);
+			jaxbPool.releaseMarshaller(marshaller);
+		}
+	}
+
+	private static void marshalElement(Marshaller marshaller, XMLStreamWriter streamWriter, QName name,
+			Class<?> type, boolean nillable, Object value) throws JAXBException {
+		if (null != value || nillable) {
+			marshaller.marshal(newElement(name, type, value), streamWriter);
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static JAXBElement<?> newElement(QName name, Class<?> type, Object value) {
+		return new JAXBElement(name, type, value);
+	}
+
+	private XMLStreamWriter getXMLStreamWriter(Result result) throws XMLStreamException {
+		if (StaxUtils.isStaxResult(result)) {
+			XMLStreamWriter streamWriter = StaxUtils.getXMLStreamWriter(result);
+			if (null != streamWriter) {
+				return streamWriter;
+			}
+			XMLEventWriter eventWriter = StaxUtils.getXMLEventWriter(result);
+			if (null != eventWriter) {
+				return StaxUtils.createEventStreamWriter(eventWriter);
+			}
+		}
+		if (result instanceof DOMResult || result instanceof StreamResult) {
+			return outputFactory.createXMLStreamWriter(result);
+		}
+		return null;
+	}
+
+	private XMLStreamReader getXMLStreamReader(Source source) throws XMLStreamException {
+		if (StaxUtils.isStaxSource(source)) {
+			XMLStreamReader streamReader = StaxUtils.getXMLStreamReader(source);
+			if (null != streamReader) {
+				return streamReader;
+			}
+			XMLEventReader eventReader = StaxUtils.getXMLEventReader(source);
+			if (null != eventReader) {
+				return StaxUtils.createEventStreamReader(eventReader);
+			}
+		}
+		if (source instanceof StreamSource) {
+			InputStream inputStream = ((StreamSource) source).getInputStream();
+			if (null != inputStream) {
+				inputStream = FastInfosetHelper.markSupported(inputStream);
+				XMLStreamReader streamReader = FastInfosetHelper.createXMLStreamReaderIfFastInfoset(inputStream);
+				return null != streamReader ? streamReader
+						: inputFactory.createXMLStreamReader(source.getSystemId(), inputStream);
+			}
+			return inputFactory.createXMLStreamReader(source);
+		}
+		return null;
+	}
+
+	private void unmarshalChildElements(MessageContext messageContext, Unmarshaller unmarshaller,
+			XMLStreamReader reader, QName[] elementNames, Class<?>[] elementTypes, boolean[] repeated,
+			ForkJoinPool pool, int chunkSize, WebServiceMessage request, JaxbPool jaxbPool,
+			RepeatedElement[] repeatedElements, Object[] values) throws JAXBException, XMLStreamException {
+		int event = reader.getEventType();
+		if (XMLStreamConstants.START_ELEMENT != event) {
+			event = reader.nextTag();
+		}
+		checkPayloadRoot(messageContext, new QName(nullToEmpty(reader.getNamespaceURI()), reader.getLocalName()));
+		Map<String, String> namespaces = null;
+		if (null != pool) {
+			namespaces = new LinkedHashMap<String, String>();
+			for (int i = 0; i < reader.getNamespaceCount(); i++) {
+				String prefix = reader.getNamespacePrefix(i);
+				namespaces.put(null != prefix ? prefix : XMLConstants.DEFAULT_NS_PREFIX, reader.getNamespaceURI(i));
+			}
+		}
+		event = reader.nextTag();
+		while (XMLStreamConstants.START_ELEMENT == event) {
+			int index = indexOf(elementNames, reader.getNamespaceURI(), reader.getLocalName());
+			if (index >= 0) {
+				if (!repeated[index]) {
+					values[index] = unmarshaller.unmarshal(reader, elementTypes[index]).getValue();
+				} else if (null == pool || null == repeatedElements[index]
+						&& ((List<?>) values[index]).size() < chunkSize) {
+					addItem(values, index, unmarshaller.unmarshal(reader, elementTypes[index]).getValue());
+				} else {
+					if (null == repeatedElements[index]) {
+						repeatedElements[index] = new RepeatedElement(elementTypes[index], namespaces, pool,
+								chunkSize, request, jaxbPool);
+					}
+					repeatedElements[index].copy(reader);
+				}
+				event = reader.getEventType();
+				if (XMLStreamConstants.START_ELEMENT != event && XMLStreamConstants.END_ELEMENT != event) {
+					event = reader.nextTag();
+				}
+			} else {
+				skipElement(reader);
+				event = reader.nextTag();
+			}
+		}
+	}
+
+	private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		for (int depth = 1; depth > 0;) {
+			int event = reader.next();
+			if (XMLStreamConstants.START_ELEMENT == event) {
+				depth++;
+			} else if (XMLStreamConstants.END_ELEMENT == event) {
+				depth--;
+			}
+		}
+	}
+
+	private static int indexOf(QName[] elementNames, String namespaceUri, String localName) {
+		for (int i = 0; i < elementNames.length; i++) {
+			if (elementNames[i].getLocalPart().equals(localName)
+					&& elementNames[i].getNamespaceURI().equals(null != namespaceUri ? namespaceUri : "")) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static XMLOutputFactory createChunkOutputFactory() {
+		XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+		outputFactory.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, true);
+		return outputFactory;
+	}
+
+	private static XMLInputFactory createXmlInputFactory() {
+		XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		return inputFactory;
+	}
+
+	/**
+	 * Returns the context of the given type, creating it if necessary.
+	 */
+	public JAXBContext getJaxbContext(Class<?> type) throws JAXBException {
+		return getJaxbPool(type).jaxbContext;
+	}
+
+	private JaxbPool getJaxbPool(Class<?> type) throws JAXBException {
+		JaxbPool jaxbPool = jaxbPools.get(type);
+		if (null == jaxbPool) {
+			jaxbPool = new JaxbPool(createJaxbContext(type), poolSize);
+			JaxbPool existing = jaxbPools.putIfAbsent(type, jaxbPool);
+			if (null != existing) {
+				jaxbPool = existing;
+			}
+		}
+		return jaxbPool;
+	}
+
+	/**
+	 * Creates the context of the given type. Can be overridden to pass
+	 * additional classes or properties.
+	 */
+	protected JAXBContext createJaxbContext(Class<?> type) throws JAXBException {
+		if (logger.isDebugEnabled()) {
+			logger.debug("Creating JAXBContext for " + type);
+		}
+		return JAXBContext.newInstance(type);
+	}
+
+	/**
+	 * Creates a marshaller. Can be overridden to set custom properties.
+	 */
+	protected Marshaller createMarshaller(JAXBContext jaxbContext) throws JAXBException {
+		return jaxbContext.createMarshaller();
+	}
+
+	/**
+	 * Creates an unmarshaller. Can be overridden to set custom properties.
+	 */
+	protected Unmarshaller createUnmarshaller(JAXBContext jaxbContext) throws JAXBException {
+		return jaxbContext.createUnmarshaller();
+	}
+
+	/**
+	 * The items of a repeated child element beyond the first chunk, copied
+	 * into chunks which are parsed and unmarshalled on a pool.
+	 *
+	 * <p>
+	 * Items are copied as fragments declaring the namespaces of their own
+	 * element and attribute names. The root element of each chunk declares the
+	 * namespaces in scope of the parent element, so that prefixes of
+	 * QName-valued content, such as {@code xsi:type="ns:T"}, keep resolving.
+	 * Only the declarations of the parent itself are known when reading a
+	 * stream, so the prefixes of attribute values and text which are not
+	 * declared within an item are resolved against the reader as the item is
+	 * copied.
+	 */
+	private final class RepeatedElement {
+
+		private final Class<?> type;
+
+		private final Map<String, String> namespaces;
+
+		private final ForkJoinPool pool;
+
+		private final int chunkSize;
+
+		private final WebServiceMessage request;
+
+		private final JaxbPool jaxbPool;
+
+		private final List<ForkJoinTask<List<Object>>> chunks = new ArrayList<ForkJoinTask<List<Object>>>();
+
+		private final Set<String> unresolvedPrefixes = new HashSet<String>();
+
+		private ByteArrayOutputStream buffer;
+
+		private XMLStreamWriter writer;
+
+		private int itemCount;
+
+		RepeatedElement(Class<?> type, Map<String, String> namespaces, ForkJoinPool pool, int chunkSize,
+				WebServiceMessage request, JaxbPool jaxbPool) {
+			this.type = type;
+			this.namespaces = new LinkedHashMap<String, String>(namespaces);
+			this.pool = pool;
+			this.chunkSize = chunkSize;
+			this.request = request;
+			this.jaxbPool = jaxbPool;
+		}
+
+		/**
+		 * Copies the item the reader is positioned at, leaving the reader
+		 * after its end tag.
+		 */
+		void copy(XMLStreamReader reader) throws XMLStreamException {
+			XMLStreamWriter writer = startItem();
+			for (int depth = 0;;) {
+				switch (reader.getEventType()) {
+				case XMLStreamConstants.START_ELEMENT:
+					depth++;
+					writer.writeStartElement(nullToEmpty(reader.getPrefix()), reader.getLocalName(),
+							nullToEmpty(reader.getNamespaceURI()));
+					for (int i = 0; i < reader.getNamespaceCount(); i++) {
+						writer.writeNamespace(nullToEmpty(reader.getNamespacePrefix(i)), reader.getNamespaceURI(i));
+					}
+					for (int i = 0; i < reader.getAttributeCount(); i++) {
+						String value = reader.getAttributeValue(i);
+						resolvePrefix(reader, value.toCharArray(), 0, value.length());
+						writer.writeAttribute(nullToEmpty(reader.getAttributePrefix(i)),
+								nullToEmpty(reader.getAttributeNamespace(i)), reader.getAttributeLocalName(i),
+								reader.getAttributeValue(i));
+					}
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					depth--;
+					writer.writeEndElement();
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+					resolvePrefix(reader, reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+					writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+					break;
+				case XMLStreamConstants.SPACE:
+					writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+					break;
+				default:
+					break;
+				}
+				reader.next();
+				if (0 == depth) {
+					break;
+				}
+			}
+			endItem();
+		}
+
+		/**
+		 * Adds the namespace of the prefix the given text starts with to the
+		 * declarations of the chunk root, if the text looks like a QName whose
+		 * prefix is neither declared within the item nor on the chunk root,
+		 * but is in scope of the reader.
+		 */
+		private void resolvePrefix(XMLStreamReader reader, char[] text, int start, int length) {
+			int end = start + length;
+			while (start < end && Character.isWhitespace(text[start])) {
+				start++;
+			}
+			int colon = start;
+			while (colon < end && ':' != text[colon] && !Character.isWhitespace(text[colon])) {
+				colon++;
+			}
+			if (colon == start || colon == end || ':' != text[colon]) {
+				return;
+			}
+			String prefix = new String(text, start, colon - start);
+			if (namespaces.containsKey(prefix) || unresolvedPrefixes.contains(prefix)
+					|| XMLConstants.XML_NS_PREFIX.equals(prefix) || XMLConstants.XMLNS_ATTRIBUTE.equals(prefix)
+					|| null != writer.getNamespaceContext().getNamespaceURI(prefix)) {
+				return;
+			}
+			String namespaceUri = reader.getNamespaceURI(prefix);
+			if (null != namespaceUri && 0 != namespaceUri.length()) {
+				namespaces.put(prefix, namespaceUri);
+			} else {
+				unresolvedPrefixes.add(prefix);
+			}
+		}
+
+		/**
+		 * Copies the given item element.
+		 */
+		void copy(Node item) throws XMLStreamException {
+			copyElement(startItem(), item);
+			endItem();
+		}
+
+		private void copyElement(XMLStreamWriter writer, Node element) throws XMLStreamException {
+			String localName = element.getLocalName();
+			writer.writeStartElement(nullToEmpty(element.getPrefix()),
+					null != localName ? localName : element.getNodeName(), nullToEmpty(element.getNamespaceURI()));
+			NamedNodeMap attributes = element.getAttributes();
+			for (int i = 0; i < attributes.getLength(); i++) {
+				Node attribute = attributes.item(i);
+				if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI())) {
+					writer.writeNamespace(XMLConstants.XMLNS_ATTRIBUTE.equals(attribute.getNodeName())
+							? XMLConstants.DEFAULT_NS_PREFIX : attribute.getLocalName(), attribute.getNodeValue());
+				} else {
+					String attributeName = attribute.getLocalName();
+					writer.writeAttribute(nullToEmpty(attribute.getPrefix()),
+							nullToEmpty(attribute.getNamespaceURI()),
+							null != attributeName ? attributeName : attribute.getNodeName(), attribute.getNodeValue());
+				}
+			}
+			for (Node child = element.getFirstChild(); null != child; child = child.getNextSibling()) {
+				switch (child.getNodeType()) {
+				case Node.ELEMENT_NODE:
+					copyElement(writer, child);
+					break;
+				case Node.TEXT_NODE:
+				case Node.CDATA_SECTION_NODE:
+					writer.writeCharacters(child.getNodeValue());
+					break;
+				default:
+					break;
+				}
+			}
+			writer.writeEndElement();
+		}
+
+		private XMLStreamWriter startItem() throws XMLStreamException {
+			if (null == writer) {
+				buffer = new ByteArrayOutputStream();
+				writer = chunkOutputFactory.createXMLStreamWriter(buffer, "UTF-8");
+			}
+			return writer;
+		}
+
+		private void endItem() throws XMLStreamException {
+			if (++itemCount == chunkSize) {
+				submit();
+			}
+		}
+
+		/**
+		 * Wraps the copied items into a chunk root declaring the namespaces
+		 * known so far, and submits the chunk to the pool.
+		 */
+		private void submit() throws XMLStreamException {
+			writer.close();
+			ByteArrayOutputStream document = new ByteArrayOutputStream(buffer.size() + 256);
+			XMLStreamWriter root = chunkOutputFactory.createXMLStreamWriter(document, "UTF-8");
+			root.writeStartDocument("UTF-8", "1.0");
+			root.writeStartElement(CHUNK_ELEMENT);
+			for (Map.Entry<String, String> namespace : namespaces.entrySet()) {
+				root.writeNamespace(namespace.getKey(), namespace.getValue());
+			}
+			root.writeCharacters("");
+			root.close();
+			try {
+				buffer.writeTo(document);
+				document.write(CHUNK_END_TAG);
+			} catch (IOException ex) {
+				throw new XMLStreamException(ex);
+			}
+			final byte[] chunk = document.toByteArray();
+			writer = null;
+			buffer = null;
+			itemCount = 0;
+			chunks.add(pool.submit(new Callable<List<Object>>() {
+
+				public List<Object> call() throws Exception {
+					return unmarshalChunk(chunk);
+				}
+			}));
+		}
+
+		private List<Object> unmarshalChunk(byte[] chunk) throws JAXBException, XMLStreamException {
+			List<Object> items = new ArrayList<Object>(chunkSize);
+			Unmarshaller unmarshaller = jaxbPool.borrowUnmarshaller();
+			if (request instanceof MimeMessage) {
+				unmarshaller.setAttachmentUnmarshaller(new MimeAttachmentUnmarshaller((MimeMessage) request));
+			}
+			try {
+				XMLStreamReader reader = inputFactory.createXMLStreamReader(new ByteArrayInputStream(chunk));
+				reader.nextTag();
+				int event = reader.nextTag();
+				while (XMLStreamConstants.START_ELEMENT == event) {
+					items.add(unmarshaller.unmarshal(reader, type).getValue());
+					event = reader.getEventType();
+					if (XMLStreamConstants.START_ELEMENT != event && XMLStreamConstants.END_ELEMENT != event) {
+						event = reader.nextTag();
+					}
+				}
+				return items;
+			} finally {
+				if (request instanceof MimeMessage) {
+					unmarshaller.setAttachmentUnmarshaller(null);
+				}
+				jaxbPool.releaseUnmarshaller(unmarshaller);
+			}
+		}
+
+		/**
+		 * Submits the last chunk and adds the items of all chunks to the
+		 * list at the given index, in document order.
+		 */
+		@SuppressWarnings("unchecked")
+		void complete(Object[] values, int index) throws JAXBException, XMLStreamException {
+			if (null != writer) {
+				submit();
+			}
+			List<Object> items = (List<Object>) values[index];
+			try {
+				for (ForkJoinTask<List<Object>> chunk : chunks) {
+					items.addAll(chunk.get());
+				}
+			} catch (InterruptedException ex) {
+				cancel();
+				Thread.currentThread().interrupt();
+				throw new JAXBException("Interrupted while unmarshalling " + type, ex);
+			} catch (ExecutionException ex) {
+				cancel();
+				Throwable cause = ex.getCause();
+				if (cause instanceof JAXBException) {
+					throw (JAXBException) cause;
+				}
+				if (cause instanceof XMLStreamException) {
+					throw (XMLStreamException) cause;
+				}
+				throw new JAXBException("Could not unmarshal " + type, cause);
+			}
+		}
+
+		void cancel() {
+			for (ForkJoinTask<List<Object>> chunk : chunks) {
+				chunk.cancel(false);
+			}
+		}
+	}
+
+	private static String nullToEmpty(String value) {
+		return null != value ? value : "";
+	}
+
+	private final class JaxbPool {
+
+		final JAXBContext jaxbContext;
+		final BlockingQueue<Marshaller> marshallers;
+		final BlockingQueue<Unmarshaller> unmarshallers;
+		volatile Schema schema;
+
+		JaxbPool(JAXBContext jaxbContext, int poolSize) {
+			this.jaxbContext = jaxbContext;
+			this.marshallers = new ArrayBlockingQueue<Marshaller>(poolSize);
+			this.unmarshallers = new ArrayBlockingQueue<Unmarshaller>(poolSize);
+		}
+
+		Marshaller borrowMarshaller() throws JAXBException {
+			Marshaller marshaller = marshallers.poll();
+			return null != marshaller ? marshaller : createMarshaller(jaxbContext);
+		}
+
+		void releaseMarshaller(Marshaller marshaller) {
+			marshallers.offer(marshaller);
+		}
+
+		Unmarshaller borrowUnmarshaller() throws JAXBException {
+			Unmarshaller unmarshaller = unmarshallers.poll();
+			return null != unmarshaller ? unmarshaller : createUnmarshaller(jaxbContext);
+		}
+
+		void releaseUnmarshaller(Unmarshaller unmarshaller) {
+			unmarshallers.offer(unmarshaller);
+		}
+	}
+}
@@ -0,0 +1,457 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.batch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Source;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+
+import org.filatov.springforest.ws.service.endpoint.mapping.JaxWsAnnotationMethodEndpointMapping;
+import org.filatov.springforest.ws.service.endpoint.mapping.util.PayloadRootHelper;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.OrderComparator;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.ws.FaultAwareWebServiceMessage;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.WebServiceMessageFactory;
+import org.springframework.ws.context.DefaultMessageContext;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.pox.dom.DomPoxMessage;
+import org.springframework.ws.pox.dom.DomPoxMessageException;
+import org.springframework.ws.server.EndpointAdapter;
+import org.springframework.ws.server.EndpointInterceptor;
+import org.springframework.ws.server.EndpointInvocationChain;
+import org.springframework.ws.server.endpoint.mapping.AbstractEndpointMapping;
+import org.springframework.xml.transform.TransformerHelper;
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * Dispatches batch requests carrying many operation payloads in one message.
+ *
+ * <p>
+ * A batch request payload is a {@value #NAMESPACE} {@code batch} element whose
+ * child elements are operation payloads, as they would appear in the body of
+ * single requests. Each item is looked up by the
+ * {@link JaxWsAnnotationMethodEndpointMapping}s and invoked by the
+ * {@link EndpointAdapter}s of the application context, in parallel on the
+ * configured {@link ForkJoinPool}, or else on a pool of its own, shut down
+ * with the dispatcher. Items block their pool thread while their endpoint
+ * runs, so they are never dispatched on the common pool. The {@code batchResponse} element holds one
+ * child per item, in request order: the response payload, an {@code empty}
+ * element for operations without response payload, or a {@code fault} element
+ * holding a {@code faultstring}.
+ *
+ * <p>
+ * The dispatcher is both the {@code EndpointMapping} recognizing batch
+ * requests and the {@code EndpointAdapter} invoking them. Its own interceptors
+ * apply to the batch request as a whole, and each item goes through the
+ * interceptors of the endpoint mapping it is looked up by, like a single
+ * request. Items are dispatched as plain XML messages, so they have no SOAP
+ * headers: interceptors requiring them fail the item.
+ */
+public class JaxWsBatchDispatcher extends AbstractEndpointMapping
+		implements EndpointAdapter, ApplicationListener<ContextRefreshedEvent>, DisposableBean {
+
+	/** Namespace of the batch elements. */
+	public static final String NAMESPACE = "urn:springforest:ws:batch";
+
+	public static final QName BATCH = new QName(NAMESPACE, "batch");
+
+	public static final QName BATCH_RESPONSE = new QName(NAMESPACE, "batchResponse");
+
+	public static final QName EMPTY = new QName(NAMESPACE, "empty");
+
+	public static final QName FAULT = new QName(NAMESPACE, "fault");
+
+	public static final QName FAULT_STRING = new QName(NAMESPACE, "faultstring");
+
+	/** Default maximum number of items per batch. */
+	public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+	private static final String PREFIX = "b";
+
+	private static final String ITEM_CONTENT_TYPE = "text/xml";
+
+	private static final String DISALLOW_DOCTYPE_FEATURE = "http://apache.org/xml/features/disallow-doctype-decl";
+
+	private final Object batchEndpoint = new Object() {
+
+		@Override
+		public String toString() {
+			return "JaxWsBatchEndpoint";
+		}
+	};
+
+	private final PayloadRootHelper payloadRootHelper = new PayloadRootHelper();
+
+	private final TransformerHelper transformerHelper = new TransformerHelper();
+
+	private final DocumentBuilderFactory documentBuilderFactory;
+
+	private final DOMImplementation domImplementation;
+
+	private final Transformer itemTransformer;
+
+	private final WebServiceMessageFactory itemMessageFactory = new ItemMessageFactory();
+
+	private ForkJoinPool pool;
+
+	private ForkJoinPool dispatcherPool;
+
+	private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+	private volatile List<JaxWsAnnotationMethodEndpointMapping> endpointMappings;
+
+	private volatile List<EndpointAdapter> endpointAdapters;
+
+	public JaxWsBatchDispatcher() {
+		try {
+			this.documentBuilderFactory = DocumentBuilderFactory.newInstance();
+			documentBuilderFactory.setNamespaceAware(true);
+			documentBuilderFactory.setFeature(DISALLOW_DOCTYPE_FEATURE, true);
+			this.domImplementation = documentBuilderFactory.newDocumentBuilder().getDOMImplementation();
+			this.itemTransformer = transformerHelper.createTransformer();
+		} catch (ParserConfigurationException ex) {
+			throw new IllegalStateException("Could not create DOM implementation", ex);
+		} catch (TransformerConfigurationException ex) {
+			throw new IllegalStateException("Could not create transformer", ex);
+		}
+	}
+
+	/**
+	 * Returns the pool items are dispatched on, or {@code null} if none is set
+	 * and the dispatcher has not been initialized yet.
+	 */
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Sets the pool items are dispatched on, which is not shut down by the
+	 * dispatcher. Defaults to a pool created when the dispatcher is
+	 * initialized, with one thread per processor, and shut down when it is
+	 * destroyed.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		Assert.notNull(pool, "pool must not be null");
+		this.pool = pool;
+	}
+
+	/**
+	 * Returns the maximum number of items per batch.
+	 */
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/**
+	 * Sets the maximum number of items per batch, larger batches are rejected.
+	 * Defaults to {@value #DEFAULT_MAX_BATCH_SIZE}.
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		Assert.isTrue(maxBatchSize > 0, "maxBatchSize must be positive");
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	@Override
+	protected void initApplicationContext() throws BeansException {
+		super.initApplicationContext();
+		if (null == pool) {
+			dispatcherPool = new ForkJoinPool();
+			pool = dispatcherPool;
+		}
+	}
+
+	/**
+	 * Shuts down the pool created by the dispatcher, if any.
+	 */
+	public void destroy() {
+		if (null != dispatcherPool) {
+			dispatcherPool.shutdown();
+		}
+	}
+
+	/**
+	 * Collects the endpoint mappings and adapters of the refreshed context.
+	 */
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		List<JaxWsAnnotationMethodEndpointMapping> mappings = new ArrayList<JaxWsAnnotationMethodEndpointMapping>(
+				event.getApplicationContext().getBeansOfType(JaxWsAnnotationMethodEndpointMapping.class).values());
+		OrderComparator.sort(mappings);
+		List<EndpointAdapter> adapters = new ArrayList<EndpointAdapter>();
+		for (EndpointAdapter adapter : event.getApplicationContext().getBeansOfType(EndpointAdapter.class)
+				.values()) {
+			if (adapter != this) {
+				adapters.add(adapter);
+			}
+		}
+		OrderComparator.sort(adapters);
+		this.endpointMappings = Collections.unmodifiableList(mappings);
+		this.endpointAdapters = Collections.unmodifiableList(adapters);
+	}
+
+	@Override
+	protected Object getEndpointInternal(MessageContext messageContext) throws Exception {
+		QName root = payloadRootHelper.getPayloadRootQName(messageContext.getRequest().getPayloadSource());
+		return BATCH.equals(root) ? batchEndpoint : null;
+	}
+
+	public boolean supports(Object endpoint) {
+		return batchEndpoint == endpoint;
+	}
+
+	public void invoke(MessageContext messageContext, Object endpoint) throws Exception {
+		List<JaxWsAnnotationMethodEndpointMapping> mappings = this.endpointMappings;
+		List<EndpointAdapter> adapters = this.endpointAdapters;
+		if (null == mappings || null == adapters) {
+			throw new IllegalStateException("Batch dispatcher has not been initialized by a context refresh");
+		}
+		List<Element> items = getItems(getPayloadElement(messageContext.getRequest().getPayloadSource()));
+		if (items.size() > maxBatchSize) {
+			throw new IllegalArgumentException(
+					"Batch of " + items.size() + " items exceeds the maximum of " + maxBatchSize);
+		}
+
+		// DOM trees are not thread-safe: items are copied before and results
+		// after the parallel dispatch, on this thread
+		List<ForkJoinTask<Element>> tasks = new ArrayList<ForkJoinTask<Element>>(items.size());
+		for (Element item : items) {
+			ForkJoinTask<Element> task = ForkJoinTask
+					.adapt(new ItemDispatch(createItemRequest(item), mappings, adapters));
+			tasks.add(task);
+			if (items.size() > 1) {
+				pool.execute(task);
+			}
+		}
+
+		Document response = domImplementation.createDocument(NAMESPACE, PREFIX + ":" + BATCH_RESPONSE.getLocalPart(),
+				null);
+		Element batchResponse = response.getDocumentElement();
+		for (ForkJoinTask<Element> task : tasks) {
+			Element result = items.size() > 1 ? task.join() : task.invoke();
+			batchResponse.appendChild(response.importNode(result, true));
+		}
+		transformerHelper.transform(new DOMSource(response), messageContext.getResponse().getPayloadResult());
+	}
+
+	private Element getPayloadElement(Source source) throws Exception {
+		if (source instanceof DOMSource) {
+			Node node = ((DOMSource) source).getNode();
+			if (node instanceof Document) {
+				return ((Document) node).getDocumentElement();
+			}
+			if (node instanceof Element) {
+				return (Element) node;
+			}
+		}
+		DOMResult result = new DOMResult();
+		transformerHelper.transform(source, result);
+		return ((Document) result.getNode()).getDocumentElement();
+	}
+
+	private static List<Element> getItems(Element batch) {
+		List<Element> items = new ArrayList<Element>();
+		for (Node child = batch.getFirstChild(); null != child; child = child.getNextSibling()) {
+			if (Node.ELEMENT_NODE == child.getNodeType()) {
+				items.add((Element) child);
+			}
+		}
+		return items;
+	}
+
+	/**
+	 * Copies an item into a message of its own, declaring the namespaces in
+	 * scope of the item on its root element.
+	 */
+	private DomPoxMessage createItemRequest(Element item) {
+		Document document = domImplementation.createDocument(null, null, null);
+		Element root = (Element) document.importNode(item, true);
+		for (Node ancestor = item.getParentNode(); ancestor instanceof Element; ancestor = ancestor
+				.getParentNode()) {
+			NamedNodeMap attributes = ancestor.getAttributes();
+			for (int i = 0; i < attributes.getLength(); i++) {
+				Attr attribute = (Attr) attributes.item(i);
+				if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI())
+						&& !root.hasAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, attribute.getLocalName())) {
+					root.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, attribute.getName(),
+							attribute.getValue());
+				}
+			}
+		}
+		document.appendChild(root);
+		return new DomPoxMessage(document, itemTransformer, ITEM_CONTENT_TYPE);
+	}
+
+	/**
+	 * Looks up and invokes the endpoint of a single item, returning its
+	 * response payload or a fault element.
+	 */
+	private final class ItemDispatch implements Callable<Element> {
+
+		private final DomPoxMessage request;
+
+		private final List<JaxWsAnnotationMethodEndpointMapping> mappings;
+
+		private final List<EndpointAdapter> adapters;
+
+		ItemDispatch(DomPoxMessage request, List<JaxWsAnnotationMethodEndpointMapping> mappings,
+				List<EndpointAdapter> adapters) {
+			this.request = request;
+			this.mappings = mappings;
+			this.adapters = adapters;
+		}
+
+		public Element call() {
+			MessageContext itemContext = new DefaultMessageContext(request, itemMessageFactory);
+			try {
+				dispatch(itemContext, getEndpointInvocationChain(itemContext));
+				if (itemContext.hasResponse()) {
+					Element payload = ((DomPoxMessage) itemContext.getResponse()).getDocument().getDocumentElement();
+					if (null != payload) {
+						return payload;
+					}
+				}
+				Document document = domImplementation.createDocument(NAMESPACE,
+						PREFIX + ":" + EMPTY.getLocalPart(), null);
+				return document.getDocumentElement();
+			} catch (Exception ex) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Batch item " + request.getDocument().getDocumentElement().getLocalName()
+							+ " failed", ex);
+				}
+				return createFault(ex);
+			}
+		}
+
+		/**
+		 * Invokes the endpoint of the item through the interceptors of its
+		 * chain, as the {@code MessageDispatcher} does for single requests.
+		 */
+		private void dispatch(MessageContext itemContext, EndpointInvocationChain chain) throws Exception {
+			Object endpoint = chain.getEndpoint();
+			EndpointInterceptor[] interceptors = chain.getInterceptors();
+			int interceptorIndex = -1;
+			try {
+				boolean proceed = true;
+				if (null != interceptors) {
+					for (int i = 0; proceed && i < interceptors.length; i++) {
+						interceptorIndex = i;
+						proceed = interceptors[i].handleRequest(itemContext, endpoint);
+					}
+				}
+				if (proceed) {
+					getEndpointAdapter(endpoint).invoke(itemContext, endpoint);
+				}
+				triggerHandleResponse(interceptors, interceptorIndex, itemContext, endpoint);
+				triggerAfterCompletion(interceptors, interceptorIndex, itemContext, endpoint, null);
+			} catch (Exception ex) {
+				triggerAfterCompletion(interceptors, interceptorIndex, itemContext, endpoint, ex);
+				throw ex;
+			}
+		}
+
+		private void triggerHandleResponse(EndpointInterceptor[] interceptors, int interceptorIndex,
+				MessageContext itemContext, Object endpoint) throws Exception {
+			if (!itemContext.hasResponse()) {
+				return;
+			}
+			WebServiceMessage response = itemContext.getResponse();
+			boolean hasFault = response instanceof FaultAwareWebServiceMessage
+					&& ((FaultAwareWebServiceMessage) response).hasFault();
+			boolean resume = true;
+			for (int i = interceptorIndex; resume && i >= 0; i--) {
+				resume = hasFault ? interceptors[i].handleFault(itemContext, endpoint)
+						: interceptors[i].handleResponse(itemContext, endpoint);
+			}
+		}
+
+		private void triggerAfterCompletion(EndpointInterceptor[] interceptors, int interceptorIndex,
+				MessageContext itemContext, Object endpoint, Exception ex) {
+			for (int i = interceptorIndex; i >= 0; i--) {
+				try {
+					interceptors[i].afterCompletion(itemContext, endpoint, ex);
+				} catch (Throwable t) {
+					logger.error("Interceptor.afterCompletion threw exception", t);
+				}
+			}
+		}
+
+		private EndpointInvocationChain getEndpointInvocationChain(MessageContext itemContext) throws Exception {
+			for (JaxWsAnnotationMethodEndpointMapping mapping : mappings) {
+				EndpointInvocationChain chain = mapping.getEndpoint(itemContext);
+				if (null != chain) {
+					return chain;
+				}
+			}
+			Element root = request.getDocument().getDocumentElement();
+			throw new IllegalArgumentException("No endpoint found for {" + root.getNamespaceURI() + "}"
+					+ root.getLocalName());
+		}
+
+		private EndpointAdapter getEndpointAdapter(Object endpoint) {
+			for (EndpointAdapter adapter : adapters) {
+				if (adapter.supports(endpoint)) {
+					return adapter;
+				}
+			}
+			throw new IllegalStateException("No adapter for endpoint [" + endpoint + "]");
+		}
+
+		private Element createFault(Exception ex) {
+			Document document = domImplementation.createDocument(NAMESPACE, PREFIX + ":" + FAULT.getLocalPart(),
+					null);
+			Element faultString = document.createElementNS(NAMESPACE, PREFIX + ":" + FAULT_STRING.getLocalPart());
+			String message = ex.getMessage();
+			faultString.setTextContent(StringUtils.hasLength(message) ? message : ex.getClass().getName());
+			document.getDocumentElement().appendChild(faultString);
+			return document.getDocumentElement();
+		}
+	}
+
+	/**
+	 * Creates the plain XML messages items are dispatched with. They are never
+	 * written to a stream, so they share a transformer. Messages read from a
+	 * stream are parsed without document type declarations.
+	 */
+	private final class ItemMessageFactory implements WebServiceMessageFactory {
+
+		public WebServiceMessage createWebServiceMessage() {
+			return new DomPoxMessage(domImplementation.createDocument(null, null, null), itemTransformer,
+					ITEM_CONTENT_TYPE);
+		}
+
+		public WebServiceMessage createWebServiceMessage(InputStream inputStream) throws IOException {
+			try {
+				Document document = documentBuilderFactory.newDocumentBuilder().parse(inputStream);
+				return new DomPoxMessage(document, itemTransformer, ITEM_CONTENT_TYPE);
+			} catch (ParserConfigurationException ex) {
+				throw new DomPoxMessageException("Could not create document builder", ex);
+			} catch (SAXException ex) {
+				throw new DomPoxMessageException("Could not parse batch item message", ex);
+			}
+		}
+	}
+}
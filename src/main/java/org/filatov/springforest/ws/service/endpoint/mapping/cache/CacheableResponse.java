@@ -0,0 +1,27 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.cache;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an idempotent {@code @WebMethod} whose response payload can be served
+ * from the {@link ResponseCache} for requests with the same payload.
+ *
+ * <p>
+ * Like the JAX-WS annotations, it may be placed on the endpoint method or on
+ * the {@code @WebService} interface method it implements. Only the response
+ * payload is cached; responses carrying faults or attachments are not.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CacheableResponse {
+
+	/**
+	 * Time in milliseconds a cached response is served for.
+	 */
+	long timeToLive() default 60000;
+}
@@ -0,0 +1,160 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.cache;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.Assert;
+
+/**
+ * In-process {@link ResponseCache} bounded by the number of responses and
+ * their total size.
+ *
+ * <p>
+ * Lookups do not lock. When a bound is exceeded, responses are evicted in the
+ * order they were cached, expired responses first as they are encountered.
+ * A response is cached once per key until it expires or is evicted, so
+ * concurrent misses of the same request keep the first response. Returned
+ * payloads are shared and must not be modified.
+ */
+public class InMemoryResponseCache implements ResponseCache {
+
+	/** Default maximum number of cached responses. */
+	public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+	/** Default maximum total size of the cached payloads in bytes. */
+	public static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+	private final ConcurrentMap<ResponseCacheKey, Entry> entries = new ConcurrentHashMap<ResponseCacheKey, Entry>();
+
+	private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<Entry>();
+
+	private final AtomicLong byteSize = new AtomicLong();
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	private final int maxEntries;
+
+	private final long maxBytes;
+
+	public InMemoryResponseCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * @param maxEntries
+	 *            the maximum number of cached responses
+	 * @param maxBytes
+	 *            the maximum total size of the cached payloads in bytes
+	 */
+	public InMemoryResponseCache(int maxEntries, long maxBytes) {
+		Assert.isTrue(maxEntries > 0, "maxEntries must be positive");
+		Assert.isTrue(maxBytes > 0, "maxBytes must be positive");
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	public byte[] get(ResponseCacheKey key) {
+		Entry entry = entries.get(key);
+		if (null != entry && entry.isExpired(System.nanoTime())) {
+			remove(entry);
+			entry = null;
+		}
+		if (null == entry) {
+			missCount.incrementAndGet();
+			return null;
+		}
+		byte[] payload = entry.payload;
+		if (null == payload) {
+			missCount.incrementAndGet();
+			return null;
+		}
+		hitCount.incrementAndGet();
+		return payload;
+	}
+
+	public void put(ResponseCacheKey key, byte[] payload, long timeToLive) {
+		if (timeToLive <= 0 || payload.length > maxBytes) {
+			return;
+		}
+		long now = System.nanoTime();
+		Entry entry = new Entry(key, payload, now + TimeUnit.MILLISECONDS.toNanos(timeToLive));
+		Entry previous;
+		while (null != (previous = entries.putIfAbsent(key, entry))) {
+			if (!previous.isExpired(now)) {
+				// cached by a concurrent miss of the same request
+				return;
+			}
+			remove(previous);
+		}
+		byteSize.addAndGet(entry.size);
+		insertionOrder.offer(entry);
+		evict();
+	}
+
+	private void evict() {
+		long now = System.nanoTime();
+		for (Entry head = insertionOrder.peek(); null != head; head = insertionOrder.peek()) {
+			boolean exceeded = entries.size() > maxEntries || byteSize.get() > maxBytes;
+			if (!exceeded && entries.get(head.key) == head && !head.isExpired(now)) {
+				return;
+			}
+			Entry evicted = insertionOrder.poll();
+			if (null != evicted && remove(evicted) && !evicted.isExpired(now)) {
+				evictionCount.incrementAndGet();
+			}
+		}
+	}
+
+	private boolean remove(Entry entry) {
+		if (entries.remove(entry.key, entry)) {
+			byteSize.addAndGet(-entry.size);
+			// the entry may stay queued until it reaches the head
+			entry.payload = null;
+			return true;
+		}
+		return false;
+	}
+
+	public void clear() {
+		entries.clear();
+		insertionOrder.clear();
+		byteSize.set(0);
+	}
+
+	public ResponseCacheStatistics getStatistics() {
+		return new ResponseCacheStatistics(hitCount.get(), missCount.get(), evictionCount.get(), entries.size(),
+				byteSize.get());
+	}
+
+	@Override
+	public String toString() {
+		return "InMemoryResponseCache[" + getStatistics() + "]";
+	}
+
+	private static final class Entry {
+
+		final ResponseCacheKey key;
+		final int size;
+		final long expiresAt;
+		volatile byte[] payload;
+
+		Entry(ResponseCacheKey key, byte[] payload, long expiresAt) {
+			this.key = key;
+			this.size = payload.length;
+			this.expiresAt = expiresAt;
+			this.payload = payload;
+		}
+
+		boolean isExpired(long now) {
+			return now - expiresAt >= 0;
+		}
+	}
+}
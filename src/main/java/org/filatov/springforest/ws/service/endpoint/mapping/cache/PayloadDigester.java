@@ -0,0 +1,225 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.cache;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+
+import org.springframework.util.StringUtils;
+import org.springframework.xml.transform.TraxUtils;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+/**
+ * Computes {@link ResponseCacheKey}s from request payloads.
+ *
+ * <p>
+ * The digest covers a canonical form of the payload: element and attribute
+ * names by namespace URI and local name, attributes sorted by name, and
+ * character data. Namespace prefixes, namespace declarations, comments and
+ * whitespace-only text are ignored, so equivalent payloads written by
+ * different clients share a key.
+ *
+ * <p>
+ * Only DOM payloads, as created by SAAJ and POX messages, are digested. For
+ * other sources no key is created, as reading them may consume the request.
+ */
+public class PayloadDigester {
+
+	private static final String ALGORITHM = "SHA-256";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final byte START_ELEMENT = 1;
+
+	private static final byte ATTRIBUTE = 2;
+
+	private static final byte CHARACTERS = 3;
+
+	private static final byte END_ELEMENT = 4;
+
+	private final MessageDigest prototype;
+
+	public PayloadDigester() {
+		try {
+			this.prototype = MessageDigest.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ALGORITHM + " is not supported", ex);
+		}
+	}
+
+	/**
+	 * Creates the key of the given payload.
+	 *
+	 * @return the key, or {@code null} if the payload is empty or can not be
+	 *         read again
+	 */
+	public ResponseCacheKey createKey(Source source) throws Exception {
+		if (null == source) {
+			return null;
+		}
+		DigestCallback callback = new DigestCallback(newDigest());
+		TraxUtils.doWithSource(source, callback);
+		if (null == callback.root) {
+			return null;
+		}
+		return new ResponseCacheKey(callback.root, callback.digest.digest());
+	}
+
+	private MessageDigest newDigest() {
+		try {
+			return (MessageDigest) prototype.clone();
+		} catch (CloneNotSupportedException ex) {
+			try {
+				return MessageDigest.getInstance(ALGORITHM);
+			} catch (NoSuchAlgorithmException nsae) {
+				throw new IllegalStateException(ALGORITHM + " is not supported", nsae);
+			}
+		}
+	}
+
+	private static final class DigestCallback implements TraxUtils.SourceCallback {
+
+		final MessageDigest digest;
+
+		final StringBuilder text = new StringBuilder();
+
+		QName root;
+
+		DigestCallback(MessageDigest digest) {
+			this.digest = digest;
+		}
+
+		public void domSource(Node node) {
+			if (node instanceof Document) {
+				node = ((Document) node).getDocumentElement();
+			}
+			if (null != node && Node.ELEMENT_NODE == node.getNodeType()) {
+				root = new QName(nullToEmpty(node.getNamespaceURI()), getLocalName(node));
+				digestNode(node);
+			}
+		}
+
+		private void digestNode(Node element) {
+			startElement(element.getNamespaceURI(), getLocalName(element));
+			NamedNodeMap attributes = element.getAttributes();
+			String[][] sorted = new String[attributes.getLength()][];
+			int count = 0;
+			for (int i = 0; i < sorted.length; i++) {
+				Attr attribute = (Attr) attributes.item(i);
+				if (!XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI())
+						&& !XMLConstants.XMLNS_ATTRIBUTE.equals(attribute.getName())) {
+					sorted[count++] = new String[] { nullToEmpty(attribute.getNamespaceURI()),
+							getLocalName(attribute), attribute.getValue() };
+				}
+			}
+			attributes(Arrays.copyOf(sorted, count));
+			for (Node child = element.getFirstChild(); null != child; child = child.getNextSibling()) {
+				switch (child.getNodeType()) {
+				case Node.ELEMENT_NODE:
+					flushText();
+					digestNode(child);
+					break;
+				case Node.TEXT_NODE:
+				case Node.CDATA_SECTION_NODE:
+					text.append(child.getNodeValue());
+					break;
+				default:
+					break;
+				}
+			}
+			flushText();
+			update(END_ELEMENT);
+		}
+
+		public void staxSource(XMLEventReader eventReader) {
+			// reading may consume the request
+		}
+
+		public void staxSource(XMLStreamReader streamReader) {
+			// reading may consume the request
+		}
+
+		public void saxSource(XMLReader reader, InputSource inputSource) {
+			// reading would consume the request
+		}
+
+		public void streamSource(InputStream inputStream) {
+			// reading would consume the request
+		}
+
+		public void streamSource(Reader reader) {
+			// reading would consume the request
+		}
+
+		public void source(String systemId) {
+			// reading would consume the request
+		}
+
+		private void startElement(String namespaceURI, String localName) {
+			update(START_ELEMENT);
+			update(nullToEmpty(namespaceURI));
+			update(localName);
+		}
+
+		private void attributes(String[][] attributes) {
+			Arrays.sort(attributes, AttributeComparator.INSTANCE);
+			for (String[] attribute : attributes) {
+				update(ATTRIBUTE);
+				update(attribute[0]);
+				update(attribute[1]);
+				update(attribute[2]);
+			}
+		}
+
+		private void flushText() {
+			if (text.length() > 0) {
+				if (StringUtils.hasText(text)) {
+					update(CHARACTERS);
+					update(text.toString());
+				}
+				text.setLength(0);
+			}
+		}
+
+		private void update(byte marker) {
+			digest.update(marker);
+		}
+
+		private void update(String value) {
+			digest.update(value.getBytes(UTF_8));
+			digest.update((byte) 0);
+		}
+
+		private static String getLocalName(Node node) {
+			return null != node.getLocalName() ? node.getLocalName() : node.getNodeName();
+		}
+
+		private static String nullToEmpty(String value) {
+			return null != value ? value : "";
+		}
+	}
+
+	private static final class AttributeComparator implements Comparator<String[]> {
+
+		static final AttributeComparator INSTANCE = new AttributeComparator();
+
+		public int compare(String[] left, String[] right) {
+			int result = left[0].compareTo(right[0]);
+			return 0 != result ? result : left[1].compareTo(right[1]);
+		}
+	}
+}
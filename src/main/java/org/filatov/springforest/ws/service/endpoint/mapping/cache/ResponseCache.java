@@ -0,0 +1,40 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.cache;
+
+/**
+ * Store of marshalled response payloads of {@link CacheableResponse}
+ * operations.
+ *
+ * <p>
+ * Implementations must be thread-safe. {@link InMemoryResponseCache} is used
+ * unless another implementation is configured.
+ */
+public interface ResponseCache {
+
+	/**
+	 * Returns the cached response payload of the given key, or {@code null} if
+	 * none is cached or it has expired.
+	 */
+	byte[] get(ResponseCacheKey key);
+
+	/**
+	 * Caches a response payload.
+	 *
+	 * @param key
+	 *            the key of the request
+	 * @param payload
+	 *            the serialized response payload
+	 * @param timeToLive
+	 *            time in milliseconds the payload is served for
+	 */
+	void put(ResponseCacheKey key, byte[] payload, long timeToLive);
+
+	/**
+	 * Removes all cached responses.
+	 */
+	void clear();
+
+	/**
+	 * Returns the statistics gathered since the cache was created.
+	 */
+	ResponseCacheStatistics getStatistics();
+}
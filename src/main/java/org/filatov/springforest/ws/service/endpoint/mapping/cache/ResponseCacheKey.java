@@ -0,0 +1,59 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.cache;
+
+import java.util.Arrays;
+
+import javax.xml.namespace.QName;
+
+/**
+ * Key of a cached response: the operation name and the digest of the
+ * canonical request payload.
+ */
+public final class ResponseCacheKey {
+
+	private final QName operation;
+
+	private final byte[] digest;
+
+	private final int hashCode;
+
+	public ResponseCacheKey(QName operation, byte[] digest) {
+		this.operation = operation;
+		this.digest = digest.clone();
+		this.hashCode = 31 * operation.hashCode() + Arrays.hashCode(digest);
+	}
+
+	public QName getOperation() {
+		return operation;
+	}
+
+	public byte[] getDigest() {
+		return digest.clone();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ResponseCacheKey)) {
+			return false;
+		}
+		ResponseCacheKey other = (ResponseCacheKey) obj;
+		return hashCode == other.hashCode && operation.equals(other.operation)
+				&& Arrays.equals(digest, other.digest);
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(operation.toString()).append('#');
+		for (byte b : digest) {
+			builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return builder.toString();
+	}
+}
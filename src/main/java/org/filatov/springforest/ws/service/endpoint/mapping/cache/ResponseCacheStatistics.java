@@ -0,0 +1,70 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.cache;
+
+/**
+ * Snapshot of the statistics of a {@link ResponseCache}.
+ */
+public final class ResponseCacheStatistics {
+
+	private final long hitCount;
+
+	private final long missCount;
+
+	private final long evictionCount;
+
+	private final long size;
+
+	private final long byteSize;
+
+	public ResponseCacheStatistics(long hitCount, long missCount, long evictionCount, long size, long byteSize) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.size = size;
+		this.byteSize = byteSize;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Returns the ratio of hits to lookups, or {@code 0} if there were no
+	 * lookups.
+	 */
+	public double getHitRatio() {
+		long lookups = hitCount + missCount;
+		return 0 == lookups ? 0 : (double) hitCount / lookups;
+	}
+
+	/**
+	 * Returns the number of responses removed before they expired to keep the
+	 * cache within its bounds.
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Returns the number of cached responses.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the total size of the cached payloads in bytes.
+	 */
+	public long getByteSize() {
+		return byteSize;
+	}
+
+	@Override
+	public String toString() {
+		return "hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + ", size=" + size
+				+ ", bytes=" + byteSize;
+	}
+}
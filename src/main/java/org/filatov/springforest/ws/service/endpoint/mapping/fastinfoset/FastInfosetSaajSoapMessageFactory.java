@@ -0,0 +1,111 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.fastinfoset;
+
+import java.lang.reflect.Method;
+import java.util.Iterator;
+
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.filatov.springforest.ws.service.endpoint.mapping.util.FastInfosetHelper;
+import org.filatov.springforest.ws.service.endpoint.mapping.util.TransportHelper;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.ws.soap.SoapMessageCreationException;
+import org.springframework.ws.soap.saaj.SaajSoapMessage;
+import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
+
+/**
+ * {@link SaajSoapMessageFactory} negotiating the Fast Infoset binary encoding
+ * of messages with the clients of the current transport connection.
+ *
+ * <p>
+ * Requests with an {@code application/fastinfoset} or
+ * {@code application/soap+fastinfoset} content type are decoded by the SAAJ
+ * implementation, and their payload is exposed as a DOM tree like any other
+ * request, so the endpoint mapping and payload processors handle them
+ * unchanged. Responses are encoded as Fast Infoset when the request is, or
+ * when its {@code Accept} header lists a Fast Infoset content type; other
+ * clients keep exchanging textual XML.
+ *
+ * <p>
+ * Requires a SAAJ implementation supporting Fast Infoset, such as the
+ * reference implementation bundled with the JDK, whose messages are switched
+ * to Fast Infoset through their {@code setIsFastInfoset(boolean)} method.
+ * With other implementations, responses are written as textual XML.
+ */
+public class FastInfosetSaajSoapMessageFactory extends SaajSoapMessageFactory {
+
+	protected static final Log logger = LogFactory.getLog(FastInfosetSaajSoapMessageFactory.class);
+
+	private static final String SET_FAST_INFOSET_METHOD_NAME = "setIsFastInfoset";
+
+	private volatile Method setFastInfoset;
+
+	public FastInfosetSaajSoapMessageFactory() {
+	}
+
+	public FastInfosetSaajSoapMessageFactory(MessageFactory messageFactory) {
+		super(messageFactory);
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		super.afterPropertiesSet();
+		SOAPMessage message;
+		try {
+			message = getMessageFactory().createMessage();
+		} catch (SOAPException ex) {
+			throw new SoapMessageCreationException("Could not create empty message: " + ex.getMessage(), ex);
+		}
+		setFastInfoset = ReflectionUtils.findMethod(message.getClass(), SET_FAST_INFOSET_METHOD_NAME, boolean.class);
+		if (null == setFastInfoset) {
+			logger.warn("SAAJ implementation " + message.getClass().getName()
+					+ " does not support Fast Infoset, responses are written as textual XML");
+		}
+	}
+
+	/**
+	 * Returns {@code true} if the SAAJ implementation can write Fast Infoset
+	 * encoded messages.
+	 */
+	public boolean isFastInfosetSupported() {
+		return null != setFastInfoset;
+	}
+
+	@Override
+	public SaajSoapMessage createWebServiceMessage() {
+		SaajSoapMessage message = super.createWebServiceMessage();
+		Method setFastInfoset = this.setFastInfoset;
+		if (null != setFastInfoset && isFastInfosetAccepted()) {
+			try {
+				setFastInfoset.invoke(message.getSaajMessage(), Boolean.TRUE);
+			} catch (Exception ex) {
+				logger.warn("Could not switch messages to Fast Infoset, responses are written as textual XML", ex);
+				this.setFastInfoset = null;
+			}
+		}
+		return message;
+	}
+
+	/**
+	 * Returns {@code true} if the client of the current transport connection
+	 * accepts Fast Infoset encoded responses: if its request is Fast Infoset
+	 * encoded, or its {@code Accept} header lists a Fast Infoset content type.
+	 * Returns {@code false} outside of a receiving connection, when messages
+	 * are created to be sent.
+	 */
+	protected boolean isFastInfosetAccepted() {
+		if (FastInfosetHelper.isFastInfosetContentType(TransportHelper.getRequestHeader("Content-Type"))) {
+			return true;
+		}
+		Iterator<String> accept = TransportHelper.getRequestHeaders("Accept");
+		while (null != accept && accept.hasNext()) {
+			if (FastInfosetHelper.acceptsFastInfoset(accept.next())) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
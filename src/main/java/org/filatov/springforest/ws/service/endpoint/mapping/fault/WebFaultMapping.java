@@ -0,0 +1,140 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.fault;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.namespace.QName;
+import javax.xml.ws.WebFault;
+
+import org.filatov.springforest.ws.service.endpoint.mapping.util.MethodHandleHelper;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * The SOAP fault mapping of a {@link WebFault} annotated exception type,
+ * resolved once per declared exception of an endpoint method.
+ *
+ * <p>
+ * The fault bean returned by the exception's {@code getFaultInfo()} method is
+ * written as the fault detail, under the element named by the
+ * {@code @WebFault} annotation unless the bean type is an
+ * {@link XmlRootElement}. The fault string is the exception message.
+ */
+public final class WebFaultMapping {
+
+	private static final String FAULT_INFO_METHOD_NAME = "getFaultInfo";
+
+	private final Class<?> exceptionType;
+
+	private final Class<?> faultBeanType;
+
+	private final QName detailElementName;
+
+	private final Method faultInfoGetter;
+
+	private final MethodHandle faultInfoHandle;
+
+	private WebFaultMapping(Class<?> exceptionType, Class<?> faultBeanType, QName detailElementName,
+			Method faultInfoGetter) {
+		this.exceptionType = exceptionType;
+		this.faultBeanType = faultBeanType;
+		this.detailElementName = detailElementName;
+		this.faultInfoGetter = faultInfoGetter;
+		this.faultInfoHandle = MethodHandleHelper.unreflectGetter(faultInfoGetter);
+	}
+
+	/**
+	 * Creates the mapping of the given exception type.
+	 *
+	 * @param exceptionType
+	 *            the declared exception type
+	 * @param defaultNamespace
+	 *            the namespace of the detail element when the
+	 *            {@code @WebFault} annotation does not name one
+	 * @return the mapping, or {@code null} if the type is not annotated with
+	 *         {@code @WebFault} or has no {@code getFaultInfo()} method
+	 */
+	public static WebFaultMapping forExceptionType(Class<?> exceptionType, String defaultNamespace) {
+		WebFault webFault = exceptionType.getAnnotation(WebFault.class);
+		if (null == webFault) {
+			return null;
+		}
+		Method faultInfoGetter = ReflectionUtils.findMethod(exceptionType, FAULT_INFO_METHOD_NAME);
+		if (null == faultInfoGetter || Void.TYPE.equals(faultInfoGetter.getReturnType())) {
+			return null;
+		}
+		Class<?> faultBeanType = faultInfoGetter.getReturnType();
+		QName detailElementName = null;
+		if (null == faultBeanType.getAnnotation(XmlRootElement.class)) {
+			String localName = StringUtils.hasLength(webFault.name()) ? webFault.name()
+					: exceptionType.getSimpleName();
+			String namespace = StringUtils.hasLength(webFault.targetNamespace()) ? webFault.targetNamespace()
+					: defaultNamespace;
+			detailElementName = new QName(null != namespace ? namespace : "", localName);
+		}
+		ReflectionUtils.makeAccessible(faultInfoGetter);
+		return new WebFaultMapping(exceptionType, faultBeanType, detailElementName, faultInfoGetter);
+	}
+
+	/**
+	 * Returns the mapped exception type.
+	 */
+	public Class<?> getExceptionType() {
+		return exceptionType;
+	}
+
+	/**
+	 * Returns the type of the fault bean, whose JAXB context marshals the
+	 * fault detail.
+	 */
+	public Class<?> getFaultBeanType() {
+		return faultBeanType;
+	}
+
+	/**
+	 * Returns the name of the detail element, or {@code null} if the fault
+	 * bean is an {@link XmlRootElement}.
+	 */
+	public QName getDetailElementName() {
+		return detailElementName;
+	}
+
+	/**
+	 * Returns the fault string of the given exception.
+	 */
+	public String getFaultString(Exception ex) {
+		String message = ex.getMessage();
+		return null != message ? message : exceptionType.getName();
+	}
+
+	/**
+	 * Returns the fault detail of the given exception, ready to be
+	 * marshalled: the fault bean, or the fault bean wrapped into a
+	 * {@link JAXBElement} named after the detail element. Returns
+	 * {@code null} if the exception carries no fault bean.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public Object getFaultDetail(Exception ex) throws Exception {
+		Object faultBean;
+		if (null != faultInfoHandle) {
+			try {
+				faultBean = (Object) faultInfoHandle.invokeExact((Object) ex);
+			} catch (Throwable t) {
+				throw MethodHandleHelper.rethrow(t);
+			}
+		} else {
+			faultBean = faultInfoGetter.invoke(ex);
+		}
+		if (null == faultBean || null == detailElementName) {
+			return faultBean;
+		}
+		return new JAXBElement(detailElementName, faultBeanType, faultBean);
+	}
+
+	@Override
+	public String toString() {
+		return exceptionType.getName() + " -> " + (null != detailElementName ? detailElementName : faultBeanType);
+	}
+}
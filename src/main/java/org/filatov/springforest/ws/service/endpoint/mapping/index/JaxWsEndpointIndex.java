@@ -0,0 +1,312 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jws.WebParam;
+import javax.xml.namespace.QName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.StringUtils;
+
+/**
+ * Index of {@code @WebServiceEndpoint} classes and their operations, generated
+ * at compile time by {@link JaxWsEndpointIndexProcessor}.
+ *
+ * <p>
+ * The index is stored in {@value #INDEX_LOCATION}, one line per operation
+ * holding the endpoint class, the declaring class, the method name and
+ * parameter types, the operation {@link QName}, the wrapper classes and the
+ * parameter modes, separated by tabs. Endpoints without operations are stored
+ * as a line holding the endpoint class only. Indexes of all class path entries
+ * are merged when loaded.
+ */
+public class JaxWsEndpointIndex {
+
+	protected static final Log logger = LogFactory.getLog(JaxWsEndpointIndex.class);
+
+	/** Location of the index within a class path entry. */
+	public static final String INDEX_LOCATION = "META-INF/springforest.ws.endpoints";
+
+	static final Charset CHARSET = Charset.forName("UTF-8");
+
+	private static final String SEPARATOR = "\t";
+
+	private static final String LIST_SEPARATOR = ",";
+
+	private final Map<String, List<Operation>> operations;
+
+	JaxWsEndpointIndex(Map<String, List<Operation>> operations) {
+		this.operations = operations;
+	}
+
+	/**
+	 * Loads and merges the indexes found by the given class loader.
+	 *
+	 * @return the index, empty if no index was found
+	 */
+	public static JaxWsEndpointIndex load(ClassLoader classLoader) throws IOException {
+		Map<String, List<Operation>> operations = new LinkedHashMap<String, List<Operation>>();
+		Enumeration<URL> resources = classLoader.getResources(INDEX_LOCATION);
+		while (resources.hasMoreElements()) {
+			URL resource = resources.nextElement();
+			if (logger.isDebugEnabled()) {
+				logger.debug("Loading endpoint index " + resource);
+			}
+			InputStream inputStream = resource.openStream();
+			try {
+				read(inputStream, operations);
+			} finally {
+				inputStream.close();
+			}
+		}
+		return new JaxWsEndpointIndex(operations);
+	}
+
+	static void read(InputStream inputStream, Map<String, List<Operation>> operations) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, CHARSET));
+		for (String line = reader.readLine(); null != line; line = reader.readLine()) {
+			if (!StringUtils.hasText(line) || line.startsWith("#")) {
+				continue;
+			}
+			String[] fields = line.split(SEPARATOR, -1);
+			List<Operation> endpointOperations = operations.get(fields[0]);
+			if (null == endpointOperations) {
+				endpointOperations = new ArrayList<Operation>();
+				operations.put(fields[0], endpointOperations);
+			}
+			if (fields.length > 1) {
+				endpointOperations.add(Operation.parse(fields));
+			}
+		}
+	}
+
+	static void write(Writer writer, Map<String, List<Operation>> operations) throws IOException {
+		for (Map.Entry<String, List<Operation>> entry : operations.entrySet()) {
+			if (entry.getValue().isEmpty()) {
+				writer.write(entry.getKey());
+				writer.write('\n');
+			}
+			for (Operation operation : entry.getValue()) {
+				writer.write(operation.format());
+				writer.write('\n');
+			}
+		}
+	}
+
+	/**
+	 * Returns {@code true} if no endpoint is indexed.
+	 */
+	public boolean isEmpty() {
+		return operations.isEmpty();
+	}
+
+	/**
+	 * Returns the names of the indexed endpoint classes.
+	 */
+	public List<String> getEndpointClassNames() {
+		return new ArrayList<String>(operations.keySet());
+	}
+
+	/**
+	 * Returns the operations of the given endpoint class, or {@code null} if
+	 * the class is not indexed.
+	 */
+	public List<Operation> getOperations(String endpointClassName) {
+		List<Operation> endpointOperations = operations.get(endpointClassName);
+		return null != endpointOperations ? Collections.unmodifiableList(endpointOperations) : null;
+	}
+
+	/**
+	 * Resolves the operations of the given endpoint class to its methods.
+	 *
+	 * @return the methods by their operation names, or {@code null} if the
+	 *         class is not indexed or an indexed method can not be found
+	 */
+	public Map<Method, QName> resolveOperations(Class<?> endpointType) {
+		List<Operation> endpointOperations = operations.get(endpointType.getName());
+		if (null == endpointOperations) {
+			return null;
+		}
+		Map<String, Method[]> declaredMethods = new HashMap<String, Method[]>();
+		Map<Method, QName> methods = new LinkedHashMap<Method, QName>();
+		for (Operation operation : endpointOperations) {
+			Method method = operation.resolve(endpointType, declaredMethods);
+			if (null == method) {
+				if (logger.isWarnEnabled()) {
+					logger.warn("Indexed method " + operation.getMethodName() + " was not found in hierarchy of "
+							+ endpointType + ", the endpoint index is out of date");
+				}
+				return null;
+			}
+			methods.put(method, operation.getQName());
+		}
+		return methods;
+	}
+
+	/**
+	 * A single indexed endpoint method.
+	 */
+	public static final class Operation {
+
+		private final String endpointClassName;
+
+		private final String declaringClassName;
+
+		private final String methodName;
+
+		private final String[] parameterTypeNames;
+
+		private final QName qname;
+
+		private final String requestWrapperClassName;
+
+		private final String responseWrapperClassName;
+
+		private final WebParam.Mode[] parameterModes;
+
+		Operation(String endpointClassName, String declaringClassName, String methodName,
+				String[] parameterTypeNames, QName qname, String requestWrapperClassName,
+				String responseWrapperClassName, WebParam.Mode[] parameterModes) {
+			this.endpointClassName = endpointClassName;
+			this.declaringClassName = declaringClassName;
+			this.methodName = methodName;
+			this.parameterTypeNames = parameterTypeNames;
+			this.qname = qname;
+			this.requestWrapperClassName = requestWrapperClassName;
+			this.responseWrapperClassName = responseWrapperClassName;
+			this.parameterModes = parameterModes;
+		}
+
+		public String getEndpointClassName() {
+			return endpointClassName;
+		}
+
+		public String getDeclaringClassName() {
+			return declaringClassName;
+		}
+
+		public String getMethodName() {
+			return methodName;
+		}
+
+		/**
+		 * Returns the parameter types in {@link Class#getName()} format.
+		 */
+		public String[] getParameterTypeNames() {
+			return parameterTypeNames.clone();
+		}
+
+		public QName getQName() {
+			return qname;
+		}
+
+		/**
+		 * Returns the {@code @RequestWrapper} class name, or {@code null}.
+		 */
+		public String getRequestWrapperClassName() {
+			return requestWrapperClassName;
+		}
+
+		/**
+		 * Returns the {@code @ResponseWrapper} class name, or {@code null}.
+		 */
+		public String getResponseWrapperClassName() {
+			return responseWrapperClassName;
+		}
+
+		/**
+		 * Returns the {@code @WebParam} mode of each parameter, {@code IN} for
+		 * parameters without {@code @WebParam}.
+		 */
+		public WebParam.Mode[] getParameterModes() {
+			return parameterModes.clone();
+		}
+
+		private Method resolve(Class<?> endpointType, Map<String, Method[]> declaredMethods) {
+			for (Class<?> type = endpointType; null != type; type = type.getSuperclass()) {
+				if (!type.getName().equals(declaringClassName)) {
+					continue;
+				}
+				Method[] methods = declaredMethods.get(declaringClassName);
+				if (null == methods) {
+					methods = type.getDeclaredMethods();
+					declaredMethods.put(declaringClassName, methods);
+				}
+				for (Method method : methods) {
+					if (method.getName().equals(methodName) && matches(method.getParameterTypes())) {
+						return method;
+					}
+				}
+				return null;
+			}
+			return null;
+		}
+
+		private boolean matches(Class<?>[] parameterTypes) {
+			if (parameterTypes.length != parameterTypeNames.length) {
+				return false;
+			}
+			for (int i = 0; i < parameterTypes.length; i++) {
+				if (!parameterTypes[i].getName().equals(parameterTypeNames[i])) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		String format() {
+			String[] modes = new String[parameterModes.length];
+			for (int i = 0; i < modes.length; i++) {
+				modes[i] = parameterModes[i].name();
+			}
+			return endpointClassName + SEPARATOR + declaringClassName + SEPARATOR + methodName + SEPARATOR
+					+ StringUtils.arrayToDelimitedString(parameterTypeNames, LIST_SEPARATOR) + SEPARATOR
+					+ qname.toString() + SEPARATOR + nullToEmpty(requestWrapperClassName) + SEPARATOR
+					+ nullToEmpty(responseWrapperClassName) + SEPARATOR
+					+ StringUtils.arrayToDelimitedString(modes, LIST_SEPARATOR);
+		}
+
+		static Operation parse(String[] fields) throws IOException {
+			if (fields.length != 8) {
+				throw new IOException("Malformed endpoint index entry: "
+						+ StringUtils.arrayToDelimitedString(fields, SEPARATOR));
+			}
+			String[] modeNames = StringUtils.tokenizeToStringArray(fields[7], LIST_SEPARATOR);
+			WebParam.Mode[] modes = new WebParam.Mode[modeNames.length];
+			for (int i = 0; i < modes.length; i++) {
+				modes[i] = WebParam.Mode.valueOf(modeNames[i]);
+			}
+			return new Operation(fields[0], fields[1], fields[2],
+					StringUtils.tokenizeToStringArray(fields[3], LIST_SEPARATOR), QName.valueOf(fields[4]),
+					emptyToNull(fields[5]), emptyToNull(fields[6]), modes);
+		}
+
+		private static String nullToEmpty(String value) {
+			return null != value ? value : "";
+		}
+
+		private static String emptyToNull(String value) {
+			return StringUtils.hasLength(value) ? value : null;
+		}
+
+		@Override
+		public String toString() {
+			return qname + " -> " + declaringClassName + "." + methodName;
+		}
+	}
+}
@@ -0,0 +1,332 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.index;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.jws.WebMethod;
+import javax.jws.WebParam;
+import javax.jws.WebService;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import javax.xml.namespace.QName;
+import javax.xml.ws.RequestWrapper;
+import javax.xml.ws.ResponseWrapper;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Annotation processor writing the {@link JaxWsEndpointIndex} of the
+ * {@code @WebServiceEndpoint} classes of a compilation.
+ *
+ * <p>
+ * Operation names are derived the same way
+ * {@code JaxWsAnnotationMethodEndpointMapping} derives them at runtime: from
+ * the {@code @RequestWrapper} of a {@code @WebMethod}, or from the
+ * {@code @WebParam} of its single parameter, looking up annotations on the
+ * method and the declarations it overrides. The processor is registered as a
+ * service, so it runs whenever the library is on the compile class path. On
+ * incremental compilations entries of endpoints not compiled again are kept.
+ */
+@SupportedAnnotationTypes(JaxWsEndpointIndexProcessor.ENDPOINT_ANNOTATION)
+public class JaxWsEndpointIndexProcessor extends AbstractProcessor {
+
+	static final String ENDPOINT_ANNOTATION = "org.filatov.springforest.ws.service.endpoint.mapping.WebServiceEndpoint";
+
+	private final Map<String, List<JaxWsEndpointIndex.Operation>> operations = new LinkedHashMap<String, List<JaxWsEndpointIndex.Operation>>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (TypeElement annotation : annotations) {
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				if (ElementKind.CLASS.equals(element.getKind())) {
+					indexEndpoint((TypeElement) element);
+				}
+			}
+		}
+		if (roundEnv.processingOver() && !operations.isEmpty()) {
+			writeIndex();
+		}
+		return false;
+	}
+
+	private void indexEndpoint(TypeElement endpoint) {
+		String endpointClassName = getBinaryName(endpoint);
+		List<JaxWsEndpointIndex.Operation> endpointOperations = new ArrayList<JaxWsEndpointIndex.Operation>();
+		for (ExecutableElement method : findMethods(endpoint)) {
+			JaxWsEndpointIndex.Operation operation = indexMethod(endpointClassName, method);
+			if (null != operation) {
+				endpointOperations.add(operation);
+			}
+		}
+		operations.put(endpointClassName, endpointOperations);
+	}
+
+	/**
+	 * Collects the methods of the given class and its superclasses, skipping
+	 * the ones overridden further down the hierarchy.
+	 */
+	private List<ExecutableElement> findMethods(TypeElement endpoint) {
+		List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+		for (TypeElement type = endpoint; null != type; type = getSuperclass(type)) {
+			if (Object.class.getName().equals(type.getQualifiedName().toString())) {
+				break;
+			}
+			for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+				boolean overridden = false;
+				for (Iterator<ExecutableElement> it = methods.iterator(); !overridden && it.hasNext();) {
+					overridden = processingEnv.getElementUtils().overrides(it.next(), method, endpoint);
+				}
+				if (!overridden) {
+					methods.add(method);
+				}
+			}
+		}
+		return methods;
+	}
+
+	private JaxWsEndpointIndex.Operation indexMethod(String endpointClassName, ExecutableElement method) {
+		TypeElement declaringType = (TypeElement) method.getEnclosingElement();
+		if (!isWebService(declaringType)) {
+			return null;
+		}
+		List<ExecutableElement> overridees = findOverridees(method);
+		if (null == getMethodAnnotation(method, overridees, WebMethod.class)) {
+			return null;
+		}
+		RequestWrapper requestWrapper = getMethodAnnotation(method, overridees, RequestWrapper.class);
+		ResponseWrapper responseWrapper = getMethodAnnotation(method, overridees, ResponseWrapper.class);
+		List<? extends VariableElement> parameters = method.getParameters();
+		String nameSpaceURI;
+		String localPart;
+		if (null != requestWrapper) {
+			nameSpaceURI = requestWrapper.targetNamespace();
+			localPart = requestWrapper.localName();
+		} else if (parameters.size() == 1) {
+			WebParam webParam = getParameterAnnotation(method, overridees, 0, WebParam.class);
+			if (null == webParam) {
+				warn("@WebParam annotation was not found on method arguments or method declaration first argument",
+						method);
+				return null;
+			}
+			nameSpaceURI = webParam.targetNamespace();
+			localPart = webParam.partName();
+		} else {
+			warn("@WebMethod annotated method or method declaration should have one @WebParam annotated argument",
+					method);
+			return null;
+		}
+		QName qname = StringUtils.hasLength(nameSpaceURI) ? new QName(nameSpaceURI, localPart) : new QName(localPart);
+
+		String[] parameterTypeNames = new String[parameters.size()];
+		WebParam.Mode[] parameterModes = new WebParam.Mode[parameters.size()];
+		for (int i = 0; i < parameterTypeNames.length; i++) {
+			parameterTypeNames[i] = getTypeName(parameters.get(i).asType());
+			WebParam webParam = getParameterAnnotation(method, overridees, i, WebParam.class);
+			parameterModes[i] = null != webParam ? webParam.mode() : WebParam.Mode.IN;
+		}
+		return new JaxWsEndpointIndex.Operation(endpointClassName, getBinaryName(declaringType),
+				method.getSimpleName().toString(), parameterTypeNames, qname,
+				null != requestWrapper ? requestWrapper.className() : null,
+				null != responseWrapper ? responseWrapper.className() : null, parameterModes);
+	}
+
+	private boolean isWebService(TypeElement type) {
+		if (null != type.getAnnotation(WebService.class)) {
+			return true;
+		}
+		for (TypeMirror implementee : type.getInterfaces()) {
+			if (null != asTypeElement(implementee).getAnnotation(WebService.class)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Collects the declarations the given method overrides or implements, in
+	 * the order {@code JaxWsAnnotationHelper} consults them.
+	 */
+	private List<ExecutableElement> findOverridees(ExecutableElement method) {
+		Set<ExecutableElement> overridees = new LinkedHashSet<ExecutableElement>();
+		if (!method.getModifiers().contains(Modifier.STATIC) && !method.getModifiers().contains(Modifier.PRIVATE)) {
+			TypeElement declaringType = (TypeElement) method.getEnclosingElement();
+			for (TypeElement type = declaringType; null != type; type = getSuperclass(type)) {
+				if (type != declaringType) {
+					addOverridee(method, type, overridees);
+				}
+				addInterfaceOverridees(method, type, overridees);
+			}
+		}
+		return new ArrayList<ExecutableElement>(overridees);
+	}
+
+	private void addInterfaceOverridees(ExecutableElement method, TypeElement type,
+			Set<ExecutableElement> overridees) {
+		for (TypeMirror implementee : type.getInterfaces()) {
+			TypeElement implementeeType = asTypeElement(implementee);
+			addOverridee(method, implementeeType, overridees);
+			addInterfaceOverridees(method, implementeeType, overridees);
+		}
+	}
+
+	private void addOverridee(ExecutableElement method, TypeElement type, Set<ExecutableElement> overridees) {
+		TypeElement declaringType = (TypeElement) method.getEnclosingElement();
+		for (ExecutableElement candidate : ElementFilter.methodsIn(type.getEnclosedElements())) {
+			if (processingEnv.getElementUtils().overrides(method, candidate, declaringType)) {
+				overridees.add(candidate);
+				return;
+			}
+		}
+	}
+
+	private static <T extends Annotation> T getMethodAnnotation(ExecutableElement method,
+			List<ExecutableElement> overridees, Class<T> annotationClass) {
+		T annotation = method.getAnnotation(annotationClass);
+		for (int i = 0; null == annotation && i < overridees.size(); i++) {
+			annotation = overridees.get(i).getAnnotation(annotationClass);
+		}
+		return annotation;
+	}
+
+	private static <T extends Annotation> T getParameterAnnotation(ExecutableElement method,
+			List<ExecutableElement> overridees, int index, Class<T> annotationClass) {
+		T annotation = method.getParameters().get(index).getAnnotation(annotationClass);
+		for (int i = 0; null == annotation && i < overridees.size(); i++) {
+			annotation = overridees.get(i).getParameters().get(index).getAnnotation(annotationClass);
+		}
+		return annotation;
+	}
+
+	private TypeElement getSuperclass(TypeElement type) {
+		TypeMirror superclass = type.getSuperclass();
+		return TypeKind.DECLARED.equals(superclass.getKind()) ? asTypeElement(superclass) : null;
+	}
+
+	private TypeElement asTypeElement(TypeMirror type) {
+		return (TypeElement) ((DeclaredType) type).asElement();
+	}
+
+	private String getBinaryName(TypeElement type) {
+		return processingEnv.getElementUtils().getBinaryName(type).toString();
+	}
+
+	/**
+	 * Returns the name of the erasure of the given type in
+	 * {@link Class#getName()} format.
+	 */
+	private String getTypeName(TypeMirror type) {
+		TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+		if (TypeKind.ARRAY.equals(erasure.getKind())) {
+			return "[" + getDescriptor(((ArrayType) erasure).getComponentType());
+		}
+		if (erasure.getKind().isPrimitive()) {
+			return erasure.getKind().name().toLowerCase();
+		}
+		return getBinaryName(asTypeElement(erasure));
+	}
+
+	private String getDescriptor(TypeMirror type) {
+		TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+		switch (erasure.getKind()) {
+		case BOOLEAN:
+			return "Z";
+		case BYTE:
+			return "B";
+		case CHAR:
+			return "C";
+		case SHORT:
+			return "S";
+		case INT:
+			return "I";
+		case LONG:
+			return "J";
+		case FLOAT:
+			return "F";
+		case DOUBLE:
+			return "D";
+		case ARRAY:
+			return "[" + getDescriptor(((ArrayType) erasure).getComponentType());
+		default:
+			return "L" + getBinaryName(asTypeElement(erasure)) + ";";
+		}
+	}
+
+	private void writeIndex() {
+		Map<String, List<JaxWsEndpointIndex.Operation>> index = new LinkedHashMap<String, List<JaxWsEndpointIndex.Operation>>();
+		try {
+			readPreviousIndex(index);
+		} catch (IOException ex) {
+			// no index from a previous compilation
+		}
+		index.putAll(operations);
+		try {
+			FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+					JaxWsEndpointIndex.INDEX_LOCATION);
+			Writer writer = new OutputStreamWriter(resource.openOutputStream(), JaxWsEndpointIndex.CHARSET);
+			try {
+				JaxWsEndpointIndex.write(writer, index);
+			} finally {
+				writer.close();
+			}
+		} catch (IOException ex) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"Could not write endpoint index " + JaxWsEndpointIndex.INDEX_LOCATION + ": " + ex);
+		}
+	}
+
+	/**
+	 * Reads the index of a previous compilation, keeping the entries of
+	 * endpoints which still exist.
+	 */
+	private void readPreviousIndex(Map<String, List<JaxWsEndpointIndex.Operation>> index) throws IOException {
+		FileObject resource = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+				JaxWsEndpointIndex.INDEX_LOCATION);
+		InputStream inputStream = resource.openInputStream();
+		try {
+			JaxWsEndpointIndex.read(inputStream, index);
+		} finally {
+			inputStream.close();
+		}
+		for (Iterator<String> it = index.keySet().iterator(); it.hasNext();) {
+			String endpointClassName = it.next();
+			if (null == processingEnv.getElementUtils().getTypeElement(endpointClassName.replace('$', '.'))) {
+				it.remove();
+			}
+		}
+	}
+
+	private void warn(String message, ExecutableElement method) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message, method);
+	}
+}
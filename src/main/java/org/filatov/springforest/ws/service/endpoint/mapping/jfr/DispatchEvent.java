@@ -0,0 +1,31 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base of the Flight Recorder events timing a
+ * {@linkplain org.filatov.springforest.ws.service.endpoint.mapping.metrics.DispatchPhase
+ * dispatch phase} of a single request.
+ */
+@Category({ "Spring Forest", "Web Services" })
+@StackTrace(false)
+abstract class DispatchEvent extends Event {
+
+	@Label("Operation")
+	@Description("Payload root name of the request")
+	String operation;
+
+	@Label("Request Size")
+	@Description("Content length of the request as announced by the transport, -1 if unknown")
+	@DataAmount
+	long requestSize;
+
+	@Label("Success")
+	@Description("Whether the phase completed without an exception")
+	boolean success;
+}
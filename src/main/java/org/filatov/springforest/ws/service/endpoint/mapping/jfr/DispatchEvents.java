@@ -0,0 +1,62 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.jfr;
+
+import javax.xml.namespace.QName;
+
+import org.filatov.springforest.ws.service.endpoint.mapping.metrics.DispatchPhase;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Emits Java Flight Recorder events timing the
+ * {@linkplain DispatchPhase dispatch phases} of every request, carrying the
+ * operation name, the request size and the outcome.
+ *
+ * <p>
+ * Each phase has its own event type, {@code org.filatov.springforest.ws.Lookup},
+ * {@code Unwrap}, {@code Invoke} and {@code Wrap}, enabled and thresholded
+ * through the settings of a recording like any JDK event. Events are only
+ * created while a recording has their type enabled; on JVMs without Flight
+ * Recorder nothing is emitted.
+ */
+public final class DispatchEvents {
+
+	private static final boolean jfrPresent = ClassUtils.isPresent("jdk.jfr.Event",
+			DispatchEvents.class.getClassLoader());
+
+	private DispatchEvents() {
+	}
+
+	/**
+	 * Returns {@code true} if a recording has any of the unwrap, invoke or
+	 * wrap events enabled.
+	 */
+	public static boolean isEnabled() {
+		return jfrPresent && JfrDispatchEvents.isEnabled();
+	}
+
+	/**
+	 * Begins the event of the given phase.
+	 *
+	 * @return the event to {@linkplain #commit(Object, QName, boolean) commit}
+	 *         when the phase completes, or {@code null} if it is not recorded
+	 */
+	public static Object begin(DispatchPhase phase) {
+		return jfrPresent ? JfrDispatchEvents.begin(phase) : null;
+	}
+
+	/**
+	 * Ends the given event and commits it if it passes the recording's
+	 * threshold. Does nothing if the event is {@code null}.
+	 *
+	 * @param event
+	 *            the event returned by {@link #begin(DispatchPhase)}
+	 * @param operation
+	 *            the operation name
+	 * @param success
+	 *            {@code false} if the phase completed with an exception
+	 */
+	public static void commit(Object event, QName operation, boolean success) {
+		if (null != event) {
+			JfrDispatchEvents.commit(event, operation, success);
+		}
+	}
+}
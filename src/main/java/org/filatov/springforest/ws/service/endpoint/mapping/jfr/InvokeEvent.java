@@ -0,0 +1,14 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event timing the endpoint invocation of a request.
+ */
+@Name("org.filatov.springforest.ws.Invoke")
+@Label("Endpoint Invocation")
+@Description("Invocation of the endpoint method")
+final class InvokeEvent extends DispatchEvent {
+}
@@ -0,0 +1,80 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.jfr;
+
+import javax.xml.namespace.QName;
+
+import jdk.jfr.EventType;
+
+import org.filatov.springforest.ws.service.endpoint.mapping.metrics.DispatchPhase;
+import org.filatov.springforest.ws.service.endpoint.mapping.util.TransportHelper;
+
+/**
+ * Creates and commits the dispatch events. Only loaded when Flight Recorder
+ * is present, see {@link DispatchEvents}.
+ *
+ * <p>
+ * Whether an event is enabled is asked of its {@link EventType}, so no event
+ * is allocated while no recording has it enabled.
+ */
+final class JfrDispatchEvents {
+
+	private static final EventType LOOKUP_TYPE = EventType.getEventType(LookupEvent.class);
+
+	private static final EventType UNWRAP_TYPE = EventType.getEventType(UnwrapEvent.class);
+
+	private static final EventType INVOKE_TYPE = EventType.getEventType(InvokeEvent.class);
+
+	private static final EventType WRAP_TYPE = EventType.getEventType(WrapEvent.class);
+
+	private JfrDispatchEvents() {
+	}
+
+	static boolean isEnabled() {
+		return UNWRAP_TYPE.isEnabled() || INVOKE_TYPE.isEnabled() || WRAP_TYPE.isEnabled();
+	}
+
+	static Object begin(DispatchPhase phase) {
+		if (!getEventType(phase).isEnabled()) {
+			return null;
+		}
+		DispatchEvent event = newEvent(phase);
+		event.begin();
+		return event;
+	}
+
+	private static EventType getEventType(DispatchPhase phase) {
+		switch (phase) {
+		case LOOKUP:
+			return LOOKUP_TYPE;
+		case UNWRAP:
+			return UNWRAP_TYPE;
+		case INVOKE:
+			return INVOKE_TYPE;
+		default:
+			return WRAP_TYPE;
+		}
+	}
+
+	private static DispatchEvent newEvent(DispatchPhase phase) {
+		switch (phase) {
+		case LOOKUP:
+			return new LookupEvent();
+		case UNWRAP:
+			return new UnwrapEvent();
+		case INVOKE:
+			return new InvokeEvent();
+		default:
+			return new WrapEvent();
+		}
+	}
+
+	static void commit(Object event, QName operation, boolean success) {
+		DispatchEvent dispatchEvent = (DispatchEvent) event;
+		dispatchEvent.end();
+		if (dispatchEvent.shouldCommit()) {
+			dispatchEvent.operation = String.valueOf(operation);
+			dispatchEvent.requestSize = TransportHelper.getRequestContentLength();
+			dispatchEvent.success = success;
+			dispatchEvent.commit();
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event timing the endpoint lookup of a request.
+ */
+@Name("org.filatov.springforest.ws.Lookup")
+@Label("Endpoint Lookup")
+@Description("Extraction of the lookup key from the request message")
+final class LookupEvent extends DispatchEvent {
+}
@@ -0,0 +1,14 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event timing the request unwrap of a request.
+ */
+@Name("org.filatov.springforest.ws.Unwrap")
+@Label("Request Unwrap")
+@Description("Resolution of the payload arguments and unwrapping of the request wrapper")
+final class UnwrapEvent extends DispatchEvent {
+}
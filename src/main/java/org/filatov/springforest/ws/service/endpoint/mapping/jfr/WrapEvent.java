@@ -0,0 +1,14 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event timing the response wrap of a request.
+ */
+@Name("org.filatov.springforest.ws.Wrap")
+@Label("Response Wrap")
+@Description("Wrapping and marshalling of the return value")
+final class WrapEvent extends DispatchEvent {
+}
@@ -0,0 +1,42 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.limit;
+
+import javax.xml.namespace.QName;
+
+import org.springframework.ws.WebServiceException;
+import org.springframework.ws.soap.server.endpoint.annotation.FaultCode;
+import org.springframework.ws.soap.server.endpoint.annotation.SoapFault;
+
+/**
+ * Thrown when a request is rejected because its operation has reached its
+ * {@linkplain ConcurrencyLimiter concurrency limit}. Resolved to a
+ * {@code Server} fault, so that clients may retry the request later.
+ */
+@SoapFault(faultCode = FaultCode.SERVER)
+public class ConcurrencyLimitExceededException extends WebServiceException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final QName operation;
+
+	private final int limit;
+
+	public ConcurrencyLimitExceededException(QName operation, int limit) {
+		super("Concurrency limit of " + limit + " exceeded for operation " + operation);
+		this.operation = operation;
+		this.limit = limit;
+	}
+
+	/**
+	 * Returns the name of the rejected operation.
+	 */
+	public QName getOperation() {
+		return operation;
+	}
+
+	/**
+	 * Returns the limit in effect when the request was rejected.
+	 */
+	public int getLimit() {
+		return limit;
+	}
+}
@@ -0,0 +1,204 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.limit;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Bulkhead limiting the number of concurrent calls of each operation, so that
+ * a saturated operation does not starve the others.
+ *
+ * <p>
+ * Every operation gets its own {@link OperationLimit}, created when the
+ * operation is first called with its {@linkplain #setOperationLimits(Map)
+ * configured limit} or the {@linkplain #setDefaultLimit(int) default limit}.
+ * Calls over the limit are rejected immediately. When
+ * {@linkplain #setAdaptive(boolean) adaptive}, the limits grow additively
+ * while calls complete within the {@linkplain #setLatencyThreshold(long)
+ * latency threshold} and shrink multiplicatively when they do not, between the
+ * {@linkplain #setMinLimit(int) minimum} and {@linkplain #setMaxLimit(int)
+ * maximum} limit.
+ *
+ * <p>
+ * Changing a property resets the limits and their counters.
+ */
+public class ConcurrencyLimiter {
+
+	protected static final Log logger = LogFactory.getLog(ConcurrencyLimiter.class);
+
+	/** Default maximum number of concurrent calls per operation. */
+	public static final int DEFAULT_LIMIT = 100;
+
+	private final ConcurrentMap<QName, OperationLimit> limits = new ConcurrentHashMap<QName, OperationLimit>();
+
+	private Map<QName, Integer> operationLimits = Collections.emptyMap();
+
+	private int defaultLimit = DEFAULT_LIMIT;
+
+	private boolean adaptive = false;
+
+	private int minLimit = 1;
+
+	private int maxLimit = 1000;
+
+	private long latencyThreshold = 1000;
+
+	private double backoffRatio = 0.9;
+
+	/**
+	 * Returns the limit of operations not configured individually.
+	 */
+	public int getDefaultLimit() {
+		return defaultLimit;
+	}
+
+	/**
+	 * Sets the limit of operations not configured individually, the initial
+	 * limit when adaptive. Defaults to {@value #DEFAULT_LIMIT}.
+	 */
+	public void setDefaultLimit(int defaultLimit) {
+		Assert.isTrue(defaultLimit > 0, "defaultLimit must be positive");
+		this.defaultLimit = defaultLimit;
+		limits.clear();
+	}
+
+	/**
+	 * Returns the limits of individual operations.
+	 */
+	public Map<QName, Integer> getOperationLimits() {
+		return Collections.unmodifiableMap(operationLimits);
+	}
+
+	/**
+	 * Sets the limits of individual operations, the initial limits when
+	 * adaptive.
+	 */
+	public void setOperationLimits(Map<QName, Integer> operationLimits) {
+		for (Map.Entry<QName, Integer> entry : operationLimits.entrySet()) {
+			Assert.isTrue(null != entry.getValue() && entry.getValue() > 0,
+					"Limit of " + entry.getKey() + " must be positive");
+		}
+		this.operationLimits = new HashMap<QName, Integer>(operationLimits);
+		limits.clear();
+	}
+
+	/**
+	 * Returns {@code true} if the limits adapt to the latency of the calls.
+	 */
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+
+	/**
+	 * Sets whether the limits adapt to the latency of the calls. Defaults to
+	 * {@code false}.
+	 */
+	public void setAdaptive(boolean adaptive) {
+		this.adaptive = adaptive;
+		limits.clear();
+	}
+
+	public int getMinLimit() {
+		return minLimit;
+	}
+
+	/**
+	 * Sets the limit adaptive limits do not shrink below. Defaults to
+	 * {@code 1}.
+	 */
+	public void setMinLimit(int minLimit) {
+		Assert.isTrue(minLimit > 0, "minLimit must be positive");
+		this.minLimit = minLimit;
+		limits.clear();
+	}
+
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+
+	/**
+	 * Sets the limit adaptive limits do not grow beyond. Defaults to
+	 * {@code 1000}.
+	 */
+	public void setMaxLimit(int maxLimit) {
+		Assert.isTrue(maxLimit > 0, "maxLimit must be positive");
+		this.maxLimit = maxLimit;
+		limits.clear();
+	}
+
+	/**
+	 * Returns the latency in milliseconds above which adaptive limits shrink.
+	 */
+	public long getLatencyThreshold() {
+		return latencyThreshold;
+	}
+
+	/**
+	 * Sets the latency in milliseconds above which adaptive limits shrink.
+	 * Defaults to {@code 1000}.
+	 */
+	public void setLatencyThreshold(long latencyThreshold) {
+		Assert.isTrue(latencyThreshold > 0, "latencyThreshold must be positive");
+		this.latencyThreshold = latencyThreshold;
+		limits.clear();
+	}
+
+	public double getBackoffRatio() {
+		return backoffRatio;
+	}
+
+	/**
+	 * Sets the factor adaptive limits are multiplied with when a call is too
+	 * slow. Defaults to {@code 0.9}.
+	 */
+	public void setBackoffRatio(double backoffRatio) {
+		Assert.isTrue(backoffRatio > 0 && backoffRatio < 1, "backoffRatio must be between 0 and 1");
+		this.backoffRatio = backoffRatio;
+		limits.clear();
+	}
+
+	/**
+	 * Returns the limit of the given operation, creating it if necessary.
+	 */
+	public OperationLimit getOperationLimit(QName operation) {
+		OperationLimit limit = limits.get(operation);
+		if (null == limit) {
+			limit = createOperationLimit(operation);
+			OperationLimit existing = limits.putIfAbsent(operation, limit);
+			if (null != existing) {
+				limit = existing;
+			}
+		}
+		return limit;
+	}
+
+	/**
+	 * Returns the limits of the operations called so far.
+	 */
+	public Map<QName, OperationLimit> getOperationLimitsInUse() {
+		return Collections.unmodifiableMap(limits);
+	}
+
+	private OperationLimit createOperationLimit(QName operation) {
+		Integer configured = operationLimits.get(operation);
+		int initialLimit = null != configured ? configured : defaultLimit;
+		if (logger.isDebugEnabled()) {
+			logger.debug("Limiting " + operation + " to " + initialLimit + (adaptive ? " adaptive" : "")
+					+ " concurrent calls");
+		}
+		if (!adaptive) {
+			return new OperationLimit(operation, initialLimit);
+		}
+		return new OperationLimit(operation, initialLimit, true, minLimit, Math.max(minLimit, maxLimit),
+				TimeUnit.MILLISECONDS.toNanos(latencyThreshold), backoffRatio);
+	}
+}
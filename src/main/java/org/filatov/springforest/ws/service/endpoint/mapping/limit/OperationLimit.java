@@ -0,0 +1,144 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.namespace.QName;
+
+/**
+ * Concurrency limit of a single operation, created by a
+ * {@link ConcurrencyLimiter}.
+ *
+ * <p>
+ * Calls are admitted while fewer calls than the limit are in flight and
+ * rejected otherwise, without waiting. An adaptive limit grows by one when a
+ * call completes within the latency threshold while at least half the limit is
+ * in use, and shrinks by the backoff ratio when a call exceeds the threshold or
+ * times out.
+ */
+public final class OperationLimit {
+
+	private final QName operation;
+
+	private final boolean adaptive;
+
+	private final int minLimit;
+
+	private final int maxLimit;
+
+	private final long latencyThresholdNanos;
+
+	private final double backoffRatio;
+
+	private final AtomicInteger limit;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final AtomicLong admittedCount = new AtomicLong();
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	OperationLimit(QName operation, int initialLimit) {
+		this(operation, initialLimit, false, initialLimit, initialLimit, Long.MAX_VALUE, 1.0);
+	}
+
+	OperationLimit(QName operation, int initialLimit, boolean adaptive, int minLimit, int maxLimit,
+			long latencyThresholdNanos, double backoffRatio) {
+		this.operation = operation;
+		this.adaptive = adaptive;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.latencyThresholdNanos = latencyThresholdNanos;
+		this.backoffRatio = backoffRatio;
+		this.limit = new AtomicInteger(Math.min(maxLimit, Math.max(minLimit, initialLimit)));
+	}
+
+	/**
+	 * Admits a call if fewer calls than the limit are in flight. Every admitted
+	 * call must be {@linkplain #release(long, boolean) released}.
+	 *
+	 * @return {@code true} if the call was admitted
+	 */
+	public boolean tryAcquire() {
+		for (;;) {
+			int current = inFlight.get();
+			if (current >= limit.get()) {
+				rejectedCount.incrementAndGet();
+				return false;
+			}
+			if (inFlight.compareAndSet(current, current + 1)) {
+				admittedCount.incrementAndGet();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Releases an admitted call, adapting the limit if it is adaptive.
+	 *
+	 * @param durationNanos
+	 *            the time the call took in nanoseconds
+	 * @param dropped
+	 *            {@code true} if the call timed out
+	 */
+	public void release(long durationNanos, boolean dropped) {
+		int released = inFlight.getAndDecrement();
+		if (!adaptive) {
+			return;
+		}
+		int current = limit.get();
+		if (dropped || durationNanos > latencyThresholdNanos) {
+			int decreased = Math.max(minLimit, (int) (current * backoffRatio));
+			if (decreased < current) {
+				limit.compareAndSet(current, decreased);
+			}
+		} else if (current < maxLimit && released * 2 >= current) {
+			limit.compareAndSet(current, current + 1);
+		}
+	}
+
+	public QName getOperation() {
+		return operation;
+	}
+
+	/**
+	 * Returns {@code true} if the limit adapts to the latency of the calls.
+	 */
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+
+	/**
+	 * Returns the current maximum number of calls in flight.
+	 */
+	public int getLimit() {
+		return limit.get();
+	}
+
+	/**
+	 * Returns the number of calls in flight.
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * Returns the number of admitted calls.
+	 */
+	public long getAdmittedCount() {
+		return admittedCount.get();
+	}
+
+	/**
+	 * Returns the number of rejected calls.
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	@Override
+	public String toString() {
+		return operation + " [limit=" + getLimit() + ", inFlight=" + getInFlight() + ", admitted="
+				+ getAdmittedCount() + ", rejected=" + getRejectedCount() + "]";
+	}
+}
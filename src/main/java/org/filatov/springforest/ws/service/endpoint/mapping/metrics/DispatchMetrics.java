@@ -0,0 +1,45 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.metrics;
+
+import javax.xml.namespace.QName;
+
+/**
+ * Receives the timings of the {@linkplain DispatchPhase dispatch phases} of
+ * every request, keyed by the operation's payload root name.
+ *
+ * <p>
+ * Implementations are called on the request threads and should be
+ * non-blocking. When no implementation is configured the dispatch pipeline
+ * does not take any timings.
+ */
+public interface DispatchMetrics {
+
+	/**
+	 * Operation name used when the lookup key can not be determined, or no
+	 * endpoint is registered for it.
+	 */
+	QName UNKNOWN_OPERATION = new QName("unknown");
+
+	/**
+	 * Records the duration of a dispatch phase.
+	 *
+	 * @param operation
+	 *            the operation name
+	 * @param phase
+	 *            the dispatch phase
+	 * @param durationNanos
+	 *            the duration of the phase in nanoseconds
+	 * @param success
+	 *            {@code false} if the phase completed with an exception
+	 */
+	void recordPhase(QName operation, DispatchPhase phase, long durationNanos, boolean success);
+
+	/**
+	 * Records the size of a request, as announced by the transport.
+	 *
+	 * @param operation
+	 *            the operation name
+	 * @param bytes
+	 *            the request size in bytes
+	 */
+	void recordRequestSize(QName operation, long bytes);
+}
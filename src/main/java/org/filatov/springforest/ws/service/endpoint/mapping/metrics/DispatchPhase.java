@@ -0,0 +1,19 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.metrics;
+
+/**
+ * Phases of the dispatch of a request to a JAX-WS annotated endpoint.
+ */
+public enum DispatchPhase {
+
+	/** Extraction of the lookup key from the request message. */
+	LOOKUP,
+
+	/** Resolution of the payload arguments and unwrapping of request wrappers. */
+	UNWRAP,
+
+	/** Invocation of the endpoint method. */
+	INVOKE,
+
+	/** Wrapping into response wrappers and marshalling of the return value. */
+	WRAP
+}
@@ -0,0 +1,98 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram with power of two buckets, bucket {@code i} holds values
+ * up to {@code 2^i - 1}. Records are approximated to the upper bound of their
+ * bucket, so percentiles are accurate within a factor
+ * of two, while count, sum and maximum are exact.
+ */
+public class Histogram {
+
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong errorCount = new AtomicLong();
+
+	private final AtomicLong sum = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value.
+	 *
+	 * @param value
+	 *            the value, negative values are recorded as zero
+	 * @param success
+	 *            {@code false} to count the record as an error
+	 */
+	public void record(long value, boolean success) {
+		if (value < 0) {
+			value = 0;
+		}
+		buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+		count.incrementAndGet();
+		if (!success) {
+			errorCount.incrementAndGet();
+		}
+		sum.addAndGet(value);
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getErrorCount() {
+		return errorCount.get();
+	}
+
+	public long getSum() {
+		return sum.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long count = getCount();
+		return 0 != count ? (double) getSum() / count : 0;
+	}
+
+	/**
+	 * Returns the upper bound of the bucket holding the given percentile.
+	 *
+	 * @param percentile
+	 *            the percentile, between {@code 0} and {@code 1}
+	 */
+	public long getPercentile(double percentile) {
+		long count = getCount();
+		if (0 == count) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(percentile * count);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank && seen > 0) {
+				return Math.min(0 == i ? 0 : (1L << i) - 1, getMax());
+			}
+		}
+		return getMax();
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + ", errors=" + getErrorCount() + ", mean=" + (long) getMean() + ", p50="
+				+ getPercentile(0.5) + ", p99=" + getPercentile(0.99) + ", max=" + getMax();
+	}
+}
@@ -0,0 +1,97 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.namespace.QName;
+
+/**
+ * In-process {@link DispatchMetrics} keeping a {@link Histogram} of the
+ * durations of every phase of every operation, in nanoseconds, and of the
+ * request sizes, in bytes.
+ */
+public class HistogramDispatchMetrics implements DispatchMetrics {
+
+	private final ConcurrentMap<QName, OperationMetrics> operations = new ConcurrentHashMap<QName, OperationMetrics>();
+
+	public void recordPhase(QName operation, DispatchPhase phase, long durationNanos, boolean success) {
+		getOperationMetrics(operation).phases.get(phase).record(durationNanos, success);
+	}
+
+	public void recordRequestSize(QName operation, long bytes) {
+		getOperationMetrics(operation).requestSizes.record(bytes, true);
+	}
+
+	/**
+	 * Returns the names of the operations recorded so far.
+	 */
+	public Set<QName> getOperations() {
+		return Collections.unmodifiableSet(operations.keySet());
+	}
+
+	/**
+	 * Returns the durations of a phase of an operation, or {@code null} if the
+	 * operation was not recorded.
+	 */
+	public Histogram getPhaseHistogram(QName operation, DispatchPhase phase) {
+		OperationMetrics operationMetrics = operations.get(operation);
+		return null != operationMetrics ? operationMetrics.phases.get(phase) : null;
+	}
+
+	/**
+	 * Returns the request sizes of an operation, or {@code null} if the
+	 * operation was not recorded.
+	 */
+	public Histogram getRequestSizeHistogram(QName operation) {
+		OperationMetrics operationMetrics = operations.get(operation);
+		return null != operationMetrics ? operationMetrics.requestSizes : null;
+	}
+
+	/**
+	 * Drops everything recorded so far.
+	 */
+	public void reset() {
+		operations.clear();
+	}
+
+	private OperationMetrics getOperationMetrics(QName operation) {
+		OperationMetrics operationMetrics = operations.get(operation);
+		if (null == operationMetrics) {
+			operationMetrics = new OperationMetrics();
+			OperationMetrics existing = operations.putIfAbsent(operation, operationMetrics);
+			if (null != existing) {
+				operationMetrics = existing;
+			}
+		}
+		return operationMetrics;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (Map.Entry<QName, OperationMetrics> entry : operations.entrySet()) {
+			builder.append(entry.getKey()).append('\n');
+			for (Map.Entry<DispatchPhase, Histogram> phase : entry.getValue().phases.entrySet()) {
+				builder.append("  ").append(phase.getKey()).append(": ").append(phase.getValue()).append('\n');
+			}
+			builder.append("  SIZE: ").append(entry.getValue().requestSizes).append('\n');
+		}
+		return builder.toString();
+	}
+
+	private static final class OperationMetrics {
+
+		final Map<DispatchPhase, Histogram> phases = new EnumMap<DispatchPhase, Histogram>(DispatchPhase.class);
+		final Histogram requestSizes = new Histogram();
+
+		OperationMetrics() {
+			for (DispatchPhase phase : DispatchPhase.values()) {
+				phases.put(phase, new Histogram());
+			}
+		}
+	}
+}
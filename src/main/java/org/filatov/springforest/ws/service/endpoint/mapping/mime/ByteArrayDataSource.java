@@ -0,0 +1,45 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.mime;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.activation.DataSource;
+
+/**
+ * Read-only {@link DataSource} over a region of a byte array, without copying
+ * it.
+ */
+class ByteArrayDataSource implements DataSource {
+
+	private final byte[] data;
+
+	private final int offset;
+
+	private final int length;
+
+	private final String contentType;
+
+	ByteArrayDataSource(byte[] data, int offset, int length, String contentType) {
+		this.data = data;
+		this.offset = offset;
+		this.length = length;
+		this.contentType = contentType;
+	}
+
+	public InputStream getInputStream() {
+		return new ByteArrayInputStream(data, offset, length);
+	}
+
+	public OutputStream getOutputStream() {
+		throw new UnsupportedOperationException("Read-only data source");
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public String getName() {
+		return "ByteArrayDataSource";
+	}
+}
@@ -0,0 +1,55 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.mime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.activation.DataSource;
+
+/**
+ * {@link DataSource} handing out a stream returned by an endpoint, so binary
+ * results are copied to the message as it is written instead of being
+ * buffered. The stream can be obtained once.
+ */
+public class InputStreamDataSource implements DataSource {
+
+	/** Content type of binary content without a declared type. */
+	public static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+	private final AtomicReference<InputStream> inputStream;
+
+	private final String contentType;
+
+	private final String name;
+
+	public InputStreamDataSource(InputStream inputStream) {
+		this(inputStream, DEFAULT_CONTENT_TYPE, null);
+	}
+
+	public InputStreamDataSource(InputStream inputStream, String contentType, String name) {
+		this.inputStream = new AtomicReference<InputStream>(inputStream);
+		this.contentType = contentType;
+		this.name = name;
+	}
+
+	public InputStream getInputStream() throws IOException {
+		InputStream stream = inputStream.getAndSet(null);
+		if (null == stream) {
+			throw new IOException("Stream of " + this + " has already been consumed");
+		}
+		return stream;
+	}
+
+	public OutputStream getOutputStream() {
+		throw new UnsupportedOperationException("Read-only data source");
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public String getName() {
+		return name;
+	}
+}
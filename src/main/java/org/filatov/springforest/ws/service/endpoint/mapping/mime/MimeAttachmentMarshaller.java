@@ -0,0 +1,79 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.mime;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.util.UUID;
+
+import javax.activation.DataHandler;
+import javax.xml.bind.attachment.AttachmentMarshaller;
+
+import org.springframework.ws.mime.MimeMessage;
+
+/**
+ * {@link AttachmentMarshaller} adding MTOM and swaRef attachments to a
+ * {@link MimeMessage}.
+ *
+ * <p>
+ * {@link DataHandler}s are added as they are, so their content is read only
+ * when the message is written.
+ */
+public class MimeAttachmentMarshaller extends AttachmentMarshaller {
+
+	static final String CID = "cid:";
+
+	private final MimeMessage mimeMessage;
+
+	private final boolean mtomEnabled;
+
+	/**
+	 * @param mimeMessage
+	 *            the message receiving the attachments
+	 * @param mtomEnabled
+	 *            whether binary content is optimized into XOP attachments
+	 */
+	public MimeAttachmentMarshaller(MimeMessage mimeMessage, boolean mtomEnabled) {
+		this.mimeMessage = mimeMessage;
+		this.mtomEnabled = mtomEnabled;
+	}
+
+	@Override
+	public String addMtomAttachment(byte[] data, int offset, int length, String mimeType, String elementNamespace,
+			String elementLocalName) {
+		ByteArrayDataSource dataSource = new ByteArrayDataSource(data, offset, length, mimeType);
+		return addMtomAttachment(new DataHandler(dataSource), elementNamespace, elementLocalName);
+	}
+
+	@Override
+	public String addMtomAttachment(DataHandler data, String elementNamespace, String elementLocalName) {
+		String contentId = UUID.randomUUID() + "@" + getHost(elementNamespace);
+		mimeMessage.addAttachment("<" + contentId + ">", data);
+		try {
+			contentId = URLEncoder.encode(contentId, "UTF-8");
+		} catch (UnsupportedEncodingException ex) {
+			// UTF-8 is always supported
+		}
+		return CID + contentId;
+	}
+
+	@Override
+	public String addSwaRefAttachment(DataHandler data) {
+		String contentId = UUID.randomUUID() + "@" + data.getName();
+		mimeMessage.addAttachment(contentId, data);
+		return contentId;
+	}
+
+	@Override
+	public boolean isXOPPackage() {
+		return mtomEnabled && mimeMessage.convertToXopPackage();
+	}
+
+	private static String getHost(String elementNamespace) {
+		try {
+			String host = URI.create(elementNamespace).getHost();
+			return null != host ? host : "springforest.ws";
+		} catch (IllegalArgumentException ex) {
+			return "springforest.ws";
+		}
+	}
+}
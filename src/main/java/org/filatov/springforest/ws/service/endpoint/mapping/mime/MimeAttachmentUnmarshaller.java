@@ -0,0 +1,66 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.mime;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+
+import javax.activation.DataHandler;
+import javax.xml.bind.attachment.AttachmentUnmarshaller;
+
+import org.springframework.util.FileCopyUtils;
+import org.springframework.ws.mime.Attachment;
+import org.springframework.ws.mime.MimeMessage;
+
+/**
+ * {@link AttachmentUnmarshaller} resolving MTOM and swaRef references against
+ * the attachments of a {@link MimeMessage}.
+ *
+ * <p>
+ * {@link DataHandler} typed properties receive the attachment's own handler,
+ * so the content is read from the attachment as the endpoint consumes it. How
+ * attachments are buffered is up to the message implementation: the SAAJ
+ * implementation of the JDK keeps them in memory, unless the
+ * {@code saaj.use.mimepull} system property is set, in which case parts above
+ * a threshold are spilled to temporary files.
+ */
+public class MimeAttachmentUnmarshaller extends AttachmentUnmarshaller {
+
+	private final MimeMessage mimeMessage;
+
+	public MimeAttachmentUnmarshaller(MimeMessage mimeMessage) {
+		this.mimeMessage = mimeMessage;
+	}
+
+	@Override
+	public DataHandler getAttachmentAsDataHandler(String cid) {
+		String contentId = cid;
+		if (contentId.startsWith(MimeAttachmentMarshaller.CID)) {
+			contentId = contentId.substring(MimeAttachmentMarshaller.CID.length());
+			try {
+				contentId = URLDecoder.decode(contentId, "UTF-8");
+			} catch (UnsupportedEncodingException ex) {
+				// UTF-8 is always supported
+			}
+			contentId = '<' + contentId + '>';
+		}
+		Attachment attachment = mimeMessage.getAttachment(contentId);
+		if (null == attachment) {
+			throw new IllegalArgumentException("Attachment " + cid + " not found");
+		}
+		return attachment.getDataHandler();
+	}
+
+	@Override
+	public byte[] getAttachmentAsByteArray(String cid) {
+		try {
+			return FileCopyUtils.copyToByteArray(getAttachmentAsDataHandler(cid).getInputStream());
+		} catch (IOException ex) {
+			throw new IllegalStateException("Could not read attachment " + cid, ex);
+		}
+	}
+
+	@Override
+	public boolean isXOPPackage() {
+		return mimeMessage.isXopPackage();
+	}
+}
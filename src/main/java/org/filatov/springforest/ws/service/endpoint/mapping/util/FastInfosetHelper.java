@@ -0,0 +1,157 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.util;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Recognizes Fast Infoset content types and documents, and parses Fast
+ * Infoset streams.
+ *
+ * <p>
+ * Streams are parsed with the StAX parser of the Fast Infoset library if it is
+ * on the class path, or else with the one bundled with the JDK's JAX-WS
+ * implementation. Both are loaded reflectively.
+ */
+public class FastInfosetHelper {
+
+	/**
+	 * Content type of Fast Infoset encoded SOAP 1.1 messages.
+	 */
+	public static final String CONTENT_TYPE = "application/fastinfoset";
+
+	/**
+	 * Content type of Fast Infoset encoded SOAP 1.2 messages.
+	 */
+	public static final String SOAP_12_CONTENT_TYPE = "application/soap+fastinfoset";
+
+	private static final String[] PARSER_CLASS_NAMES = { "com.sun.xml.fastinfoset.stax.StAXDocumentParser",
+			"com.sun.xml.internal.fastinfoset.stax.StAXDocumentParser" };
+
+	/**
+	 * The identification and version bits every Fast Infoset document starts
+	 * with, unless it has an XML declaration.
+	 */
+	private static final byte[] DOCUMENT_HEADER = { (byte) 0xE0, 0x00, 0x00, 0x01 };
+
+	private static final Constructor<?> parserConstructor = findParserConstructor();
+
+	/**
+	 * Returns whether a Fast Infoset parser is available.
+	 */
+	public static boolean isParserAvailable() {
+		return null != parserConstructor;
+	}
+
+	/**
+	 * Returns whether the given {@code Content-Type} header value denotes a
+	 * Fast Infoset encoded message.
+	 */
+	public static boolean isFastInfosetContentType(String contentType) {
+		if (null == contentType) {
+			return false;
+		}
+		int parameters = contentType.indexOf(';');
+		String mimeType = (parameters >= 0 ? contentType.substring(0, parameters) : contentType).trim();
+		return CONTENT_TYPE.equalsIgnoreCase(mimeType) || SOAP_12_CONTENT_TYPE.equalsIgnoreCase(mimeType);
+	}
+
+	/**
+	 * Returns whether the given {@code Accept} header value lists a Fast
+	 * Infoset content type, with a non zero quality.
+	 */
+	public static boolean acceptsFastInfoset(String accept) {
+		if (null == accept) {
+			return false;
+		}
+		for (String mediaRange : StringUtils.commaDelimitedListToStringArray(accept)) {
+			if (isFastInfosetContentType(mediaRange) && !mediaRange.replace(" ", "").matches(".*;q=0(\\.0*)?$")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns a stream positioned like the given one which supports
+	 * {@linkplain InputStream#mark(int) marking}, as required by
+	 * {@link #isFastInfosetDocument(InputStream)}.
+	 */
+	public static InputStream markSupported(InputStream inputStream) {
+		return inputStream.markSupported() ? inputStream : new BufferedInputStream(inputStream);
+	}
+
+	/**
+	 * Returns whether the given stream starts with a Fast Infoset document
+	 * header, leaving the stream where it was.
+	 *
+	 * @param inputStream
+	 *            the stream, which must support marking
+	 */
+	public static boolean isFastInfosetDocument(InputStream inputStream) throws IOException {
+		inputStream.mark(DOCUMENT_HEADER.length);
+		try {
+			for (byte expected : DOCUMENT_HEADER) {
+				if (expected != (byte) inputStream.read()) {
+					return false;
+				}
+			}
+			return true;
+		} finally {
+			inputStream.reset();
+		}
+	}
+
+	/**
+	 * Creates a reader of the Fast Infoset document in the given stream.
+	 *
+	 * @throws XMLStreamException
+	 *             if no Fast Infoset parser is available
+	 */
+	public static XMLStreamReader createXMLStreamReader(InputStream inputStream) throws XMLStreamException {
+		if (null == parserConstructor) {
+			throw new XMLStreamException("No Fast Infoset parser found on the class path");
+		}
+		try {
+			return (XMLStreamReader) parserConstructor.newInstance(inputStream);
+		} catch (Exception ex) {
+			throw new XMLStreamException("Could not create Fast Infoset parser", ex);
+		}
+	}
+
+	/**
+	 * Creates a reader of the given stream, parsing it as Fast Infoset if it
+	 * starts with a Fast Infoset document header, or else returns
+	 * {@code null}.
+	 *
+	 * @param inputStream
+	 *            the stream, which must support marking
+	 */
+	public static XMLStreamReader createXMLStreamReaderIfFastInfoset(InputStream inputStream)
+			throws XMLStreamException {
+		try {
+			return isFastInfosetDocument(inputStream) ? createXMLStreamReader(inputStream) : null;
+		} catch (IOException ex) {
+			throw new XMLStreamException(ex);
+		}
+	}
+
+	private static Constructor<?> findParserConstructor() {
+		for (String className : PARSER_CLASS_NAMES) {
+			try {
+				return ClassUtils.forName(className, FastInfosetHelper.class.getClassLoader())
+						.getConstructor(InputStream.class);
+			} catch (Throwable ex) {
+				// try the next one
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,104 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.core.ResolvableType;
+
+/**
+ * Support for endpoint methods returning {@link CompletionStage}s or
+ * {@link Future}s, such as {@code CompletableFuture} and JAX-WS
+ * {@code Response}.
+ */
+public class FutureHelper {
+
+	protected static final Log logger = LogFactory.getLog(FutureHelper.class);
+
+	/**
+	 * Returns {@code true} if the given method returns a
+	 * {@link CompletionStage} or a {@link Future}.
+	 */
+	public static boolean isAsynchronous(Method method) {
+		return CompletionStage.class.isAssignableFrom(method.getReturnType())
+				|| Future.class.isAssignableFrom(method.getReturnType());
+	}
+
+	/**
+	 * Returns the type of the value the given method produces: the type
+	 * argument of an asynchronous return type, or the return type itself.
+	 * Asynchronous methods producing {@link Void} are reported as
+	 * {@code void}.
+	 */
+	public static Class<?> getResultType(Method method) {
+		if (!isAsynchronous(method)) {
+			return method.getReturnType();
+		}
+		ResolvableType returnType = ResolvableType.forMethodReturnType(method);
+		ResolvableType asyncType = returnType.as(CompletionStage.class);
+		if (ResolvableType.NONE == asyncType) {
+			asyncType = returnType.as(Future.class);
+		}
+		Class<?> resultType = asyncType.resolveGeneric(0);
+		if (null == resultType) {
+			return Object.class;
+		}
+		return Void.class.equals(resultType) ? Void.TYPE : resultType;
+	}
+
+	/**
+	 * Waits for the given {@link CompletionStage} or {@link Future} to complete
+	 * and returns its value. Exceptions the computation completed with are
+	 * rethrown unwrapped.
+	 *
+	 * @param future
+	 *            the future to wait for, may be {@code null}
+	 * @param timeout
+	 *            the maximum time to wait in milliseconds, non-positive values
+	 *            wait indefinitely
+	 */
+	public static Object await(Object future, long timeout) throws Exception {
+		if (null == future) {
+			return null;
+		}
+		Future<?> target = future instanceof CompletionStage ? toFuture((CompletionStage<?>) future)
+				: (Future<?>) future;
+		try {
+			return timeout > 0 ? target.get(timeout, TimeUnit.MILLISECONDS) : target.get();
+		} catch (ExecutionException ex) {
+			throw MethodHandleHelper.rethrow(null != ex.getCause() ? ex.getCause() : ex);
+		} catch (TimeoutException ex) {
+			target.cancel(true);
+			throw ex;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw ex;
+		}
+	}
+
+	private static Future<?> toFuture(CompletionStage<?> stage) {
+		try {
+			return stage.toCompletableFuture();
+		} catch (UnsupportedOperationException ex) {
+			final CompletableFuture<Object> future = new CompletableFuture<Object>();
+			stage.whenComplete(new BiConsumer<Object, Throwable>() {
+
+				public void accept(Object value, Throwable failure) {
+					if (null != failure) {
+						future.completeExceptionally(failure);
+					} else {
+						future.complete(value);
+					}
+				}
+			});
+			return future;
+		}
+	}
+}
@@ -3,16 +3,41 @@ package org.filatov.springforest.ws.service.endpoint.mapping.util;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Executable;
 import java.lang.reflect.Method;
-import java.lang.reflect.Parameter;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+/**
+ * Looks up JAX-WS annotations on methods and their parameters, including the
+ * declarations overridden in superclasses and superinterfaces.
+ *
+ * <p>
+ * Lookups are indexed per declaring class, so the hierarchy of a method is
+ * walked once and every annotation type is resolved once per method or
+ * parameter.
+ */
 public class JaxWsAnnotationHelper {
 
 	protected static final Log logger = LogFactory.getLog(JaxWsAnnotationHelper.class);
 
+	private static final Object NONE = new Object();
+
+	private static final ClassValue<ConcurrentMap<Executable, AnnotatedMethod>> methodIndex = new ClassValue<ConcurrentMap<Executable, AnnotatedMethod>>() {
+
+		@Override
+		protected ConcurrentMap<Executable, AnnotatedMethod> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<Executable, AnnotatedMethod>();
+		}
+	};
+
 	public static <T extends Annotation> T getAnnotation(Class<?> base, Class<T> annotationClass) {
 		T annotation = null;
 		annotation = base.getAnnotation(annotationClass);
@@ -27,45 +52,114 @@ public class JaxWsAnnotationHelper {
 	}
 
 	public static <T extends Annotation> T getMethodAnnotation(Executable method, Class<T> annotationClass) {
-		T annotation = null;
-		annotation = method.getAnnotation(annotationClass);
-		if (null != annotation) {
-			return annotation;
-		}
-		Method[] overridees = getOverridees(method);
-		for (int i = 0; null == annotation && i < overridees.length; i++) {
-			annotation = overridees[i].getAnnotation(annotationClass);
-		}
-		return annotation;
+		return getAnnotatedMethod(method).getMethodAnnotation(annotationClass);
 	}
 
 	public static <T extends Annotation> T getParameterAnnotation(Executable method, Integer index,
 			Class<T> annotationClass) {
-		T annotation = null;
-		annotation = method.getParameters()[index].getAnnotation(annotationClass);
-		if (null != annotation) {
-			return annotation;
+		return getAnnotatedMethod(method).getParameterAnnotation(index, annotationClass);
+	}
+
+	public static Method[] getOverridees(Executable method) {
+		return getAnnotatedMethod(method).overridees.clone();
+	}
+
+	private static AnnotatedMethod getAnnotatedMethod(Executable method) {
+		ConcurrentMap<Executable, AnnotatedMethod> annotatedMethods = methodIndex.get(method.getDeclaringClass());
+		AnnotatedMethod annotatedMethod = annotatedMethods.get(method);
+		if (null == annotatedMethod) {
+			annotatedMethod = new AnnotatedMethod(method);
+			AnnotatedMethod existing = annotatedMethods.putIfAbsent(method, annotatedMethod);
+			if (null != existing) {
+				annotatedMethod = existing;
+			}
+		}
+		return annotatedMethod;
+	}
+
+	/**
+	 * Collects the declarations the given method overrides or implements: the
+	 * interfaces of the declaring class and their superinterfaces first, then
+	 * every superclass followed by its interfaces.
+	 */
+	private static Method[] findOverridees(Executable method) {
+		Set<Method> overridees = new LinkedHashSet<Method>();
+		if (method instanceof Method && !Modifier.isStatic(method.getModifiers())
+				&& !Modifier.isPrivate(method.getModifiers())) {
+			Class<?>[] parameterTypes = method.getParameterTypes();
+			for (Class<?> type = method.getDeclaringClass(); null != type; type = type.getSuperclass()) {
+				if (type != method.getDeclaringClass()) {
+					addOverridee(type, method.getName(), parameterTypes, overridees);
+				}
+				addInterfaceOverridees(type, method.getName(), parameterTypes, overridees);
+			}
 		}
-		Method[] overridees = getOverridees(method);
-		for (int i = 0; null == annotation && i < overridees.length; i++) {
-			annotation = overridees[i].getParameters()[index].getAnnotation(annotationClass);
+		if (logger.isTraceEnabled()) {
+			logger.trace("Method " + method + " overrides " + overridees);
 		}
-		return annotation;
+		return overridees.toArray(new Method[overridees.size()]);
 	}
 
-	public static Method[] getOverridees(Executable method) {
+	private static void addInterfaceOverridees(Class<?> type, String name, Class<?>[] parameterTypes,
+			Set<Method> overridees) {
+		for (Class<?> implementee : type.getInterfaces()) {
+			addOverridee(implementee, name, parameterTypes, overridees);
+			addInterfaceOverridees(implementee, name, parameterTypes, overridees);
+		}
+	}
+
+	private static void addOverridee(Class<?> type, String name, Class<?>[] parameterTypes, Set<Method> overridees) {
+		for (Method candidate : type.getDeclaredMethods()) {
+			if (candidate.getName().equals(name) && !Modifier.isPrivate(candidate.getModifiers())
+					&& !Modifier.isStatic(candidate.getModifiers())
+					&& Arrays.equals(candidate.getParameterTypes(), parameterTypes)) {
+				overridees.add(candidate);
+				return;
+			}
+		}
+	}
 
-		Class<?>[] implementees = method.getDeclaringClass().getInterfaces();
-		ArrayList<Method> overridees = new ArrayList<Method>();
+	private static final class AnnotatedMethod {
 
-		for (int i = 0; i < implementees.length; i++) {
-			try {
-				overridees.add(implementees[i].getMethod(method.getName(), method.getParameterTypes()));
-			} catch (NoSuchMethodException ex) {
-				logger.debug("Method " + method + " not found in " + implementees[i], ex);
+		private final Executable method;
+
+		private final Method[] overridees;
+
+		private final ConcurrentMap<Class<?>, Object> methodAnnotations = new ConcurrentHashMap<Class<?>, Object>();
+
+		private final List<ConcurrentMap<Class<?>, Object>> parameterAnnotations;
+
+		AnnotatedMethod(Executable method) {
+			this.method = method;
+			this.overridees = findOverridees(method);
+			this.parameterAnnotations = new ArrayList<ConcurrentMap<Class<?>, Object>>(method.getParameterCount());
+			for (int i = 0; i < method.getParameterCount(); i++) {
+				parameterAnnotations.add(new ConcurrentHashMap<Class<?>, Object>());
 			}
 		}
 
-		return overridees.toArray(new Method[overridees.size()]);
+		<T extends Annotation> T getMethodAnnotation(Class<T> annotationClass) {
+			Object annotation = methodAnnotations.get(annotationClass);
+			if (null == annotation) {
+				annotation = method.getAnnotation(annotationClass);
+				for (int i = 0; null == annotation && i < overridees.length; i++) {
+					annotation = overridees[i].getAnnotation(annotationClass);
+				}
+				methodAnnotations.put(annotationClass, null != annotation ? annotation : NONE);
+			}
+			return NONE != annotation ? annotationClass.cast(annotation) : null;
+		}
+
+		<T extends Annotation> T getParameterAnnotation(int index, Class<T> annotationClass) {
+			Object annotation = parameterAnnotations.get(index).get(annotationClass);
+			if (null == annotation) {
+				annotation = method.getParameters()[index].getAnnotation(annotationClass);
+				for (int i = 0; null == annotation && i < overridees.length; i++) {
+					annotation = overridees[i].getParameters()[index].getAnnotation(annotationClass);
+				}
+				parameterAnnotations.get(index).put(annotationClass, null != annotation ? annotation : NONE);
+			}
+			return NONE != annotation ? annotationClass.cast(annotation) : null;
+		}
 	}
 }
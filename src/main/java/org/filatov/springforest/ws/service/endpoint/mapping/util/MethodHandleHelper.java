@@ -0,0 +1,105 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Binds reflective members into {@link MethodHandle}s of erased, uniform
+ * types, so they can be called with {@code invokeExact} without boxing into
+ * varargs arrays or repeating access checks.
+ *
+ * <p>
+ * Every {@code unreflect} method returns {@code null} if the member can not be
+ * bound, callers are expected to fall back to reflection in that case.
+ */
+public class MethodHandleHelper {
+
+	protected static final Log logger = LogFactory.getLog(MethodHandleHelper.class);
+
+	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+	/**
+	 * Binds a getter to a handle of type {@code (Object)Object}.
+	 */
+	public static MethodHandle unreflectGetter(Method getter) {
+		return unreflect(getter, GETTER_TYPE);
+	}
+
+	/**
+	 * Binds a single argument setter to a handle of type
+	 * {@code (Object,Object)void}.
+	 */
+	public static MethodHandle unreflectSetter(Method setter) {
+		return unreflect(setter, SETTER_TYPE);
+	}
+
+	/**
+	 * Binds an instance method to a handle of type {@code (Object,Object[])Object}
+	 * taking the target and the spread argument array.
+	 */
+	public static MethodHandle unreflectSpreader(Method method) {
+		int parameterCount = method.getParameterTypes().length;
+		MethodHandle handle = unreflect(method, MethodType.genericMethodType(parameterCount + 1));
+		return null != handle ? handle.asSpreader(Object[].class, parameterCount) : null;
+	}
+
+	/**
+	 * Binds the no-argument constructor of a type to a handle of type
+	 * {@code ()Object}.
+	 */
+	public static MethodHandle unreflectConstructor(Class<?> type) {
+		try {
+			Constructor<?> constructor = type.getDeclaredConstructor();
+			ReflectionUtils.makeAccessible(constructor);
+			return lookup.unreflectConstructor(constructor).asType(CONSTRUCTOR_TYPE);
+		} catch (NoSuchMethodException ex) {
+			logger.debug("No default constructor found in " + type, ex);
+		} catch (IllegalAccessException ex) {
+			logger.debug("Constructor of " + type + " can not be bound", ex);
+		} catch (SecurityException ex) {
+			logger.debug("Constructor of " + type + " can not be bound", ex);
+		}
+		return null;
+	}
+
+	private static MethodHandle unreflect(Method method, MethodType type) {
+		try {
+			ReflectionUtils.makeAccessible(method);
+			return lookup.unreflect(method).asType(type);
+		} catch (IllegalAccessException ex) {
+			logger.debug("Method " + method + " can not be bound", ex);
+		} catch (SecurityException ex) {
+			logger.debug("Method " + method + " can not be bound", ex);
+		}
+		return null;
+	}
+
+	/**
+	 * Converts a throwable raised by a {@code MethodHandle} call into an
+	 * exception which can be rethrown from a method declaring
+	 * {@code throws Exception}. Errors are thrown as is.
+	 */
+	public static Exception rethrow(Throwable ex) {
+		if (ex instanceof Exception) {
+			return (Exception) ex;
+		}
+		if (ex instanceof Error) {
+			throw (Error) ex;
+		}
+		return new UndeclaredThrowableException(ex);
+	}
+}
@@ -0,0 +1,206 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.util;
+
+import java.io.InputStream;
+import java.io.Reader;
+
+import javax.xml.namespace.QName;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.transform.Source;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.ws.server.endpoint.support.PayloadRootUtils;
+import org.springframework.xml.namespace.QNameUtils;
+import org.springframework.xml.transform.TransformerHelper;
+import org.springframework.xml.transform.TraxUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reads the qualified name of the payload root element without materializing
+ * the payload.
+ *
+ * <p>
+ * DOM nodes and StAX readers are inspected directly, streams are pulled with a
+ * StAX parser up to the first start element, byte streams holding a Fast
+ * Infoset document with a Fast Infoset parser, SAX sources are parsed up to the
+ * first start element. Document type declarations are not processed, so that
+ * no entity is resolved during the lookup. Only unknown {@link Source} implementations are handed
+ * to {@link PayloadRootUtils}, each with its own {@link TransformerHelper}.
+ */
+public class PayloadRootHelper {
+
+	protected static final Log logger = LogFactory.getLog(PayloadRootHelper.class);
+
+	private static final String DISALLOW_DOCTYPE_FEATURE = "http://apache.org/xml/features/disallow-doctype-decl";
+
+	private static final String EXTERNAL_GENERAL_ENTITIES_FEATURE =
+			"http://xml.org/sax/features/external-general-entities";
+
+	private static final String EXTERNAL_PARAMETER_ENTITIES_FEATURE =
+			"http://xml.org/sax/features/external-parameter-entities";
+
+	private final XMLInputFactory inputFactory;
+
+	private final SAXParserFactory parserFactory;
+
+	private final TransformerHelper transformerHelper = new TransformerHelper();
+
+	public PayloadRootHelper() {
+		this.inputFactory = XMLInputFactory.newInstance();
+		this.inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		this.inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		this.parserFactory = createParserFactory();
+	}
+
+	private static SAXParserFactory createParserFactory() {
+		SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+		parserFactory.setNamespaceAware(true);
+		try {
+			parserFactory.setFeature(DISALLOW_DOCTYPE_FEATURE, true);
+			return parserFactory;
+		} catch (ParserConfigurationException ex) {
+			// disable external entities instead
+		} catch (SAXException ex) {
+			// disable external entities instead
+		}
+		try {
+			parserFactory.setFeature(EXTERNAL_GENERAL_ENTITIES_FEATURE, false);
+			parserFactory.setFeature(EXTERNAL_PARAMETER_ENTITIES_FEATURE, false);
+		} catch (ParserConfigurationException ex) {
+			throw new IllegalStateException("Could not disable external entities of " + parserFactory, ex);
+		} catch (SAXException ex) {
+			throw new IllegalStateException("Could not disable external entities of " + parserFactory, ex);
+		}
+		return parserFactory;
+	}
+
+	/**
+	 * Returns the root element name of the given payload, or {@code null} if
+	 * the payload is empty.
+	 */
+	public QName getPayloadRootQName(Source source) throws Exception {
+		if (null == source) {
+			return null;
+		}
+		PayloadRootCallback callback = new PayloadRootCallback();
+		try {
+			TraxUtils.doWithSource(source, callback);
+		} catch (IllegalArgumentException ex) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Unsupported source " + source + ", falling back to transformation", ex);
+			}
+			return PayloadRootUtils.getPayloadRootQName(source, transformerHelper);
+		}
+		return callback.qname;
+	}
+
+	private static QName readRootQName(XMLStreamReader streamReader) throws XMLStreamException {
+		while (!streamReader.isStartElement()) {
+			if (!streamReader.hasNext()) {
+				return null;
+			}
+			streamReader.next();
+		}
+		return streamReader.getName();
+	}
+
+	private static QName readRootQNameAndClose(XMLStreamReader streamReader) throws XMLStreamException {
+		try {
+			return readRootQName(streamReader);
+		} finally {
+			streamReader.close();
+		}
+	}
+
+	private class PayloadRootCallback implements TraxUtils.SourceCallback {
+
+		QName qname;
+
+		public void domSource(Node node) {
+			if (node instanceof Document) {
+				node = ((Document) node).getDocumentElement();
+			}
+			if (null != node && Node.ELEMENT_NODE == node.getNodeType()) {
+				qname = QNameUtils.getQNameForNode(node);
+			}
+		}
+
+		public void saxSource(XMLReader reader, InputSource inputSource) throws Exception {
+			if (null == reader) {
+				reader = parserFactory.newSAXParser().getXMLReader();
+			}
+			RootElementHandler handler = new RootElementHandler();
+			reader.setContentHandler(handler);
+			try {
+				reader.parse(inputSource);
+			} catch (RootElementFoundException ex) {
+				// parsing stops at the root element
+			}
+			qname = handler.qname;
+		}
+
+		public void staxSource(XMLEventReader eventReader) throws XMLStreamException {
+			while (eventReader.hasNext()) {
+				XMLEvent event = eventReader.nextEvent();
+				if (event.isStartElement()) {
+					qname = event.asStartElement().getName();
+					return;
+				}
+			}
+		}
+
+		public void staxSource(XMLStreamReader streamReader) throws XMLStreamException {
+			qname = readRootQName(streamReader);
+		}
+
+		public void streamSource(InputStream inputStream) throws XMLStreamException {
+			inputStream = FastInfosetHelper.markSupported(inputStream);
+			XMLStreamReader streamReader = FastInfosetHelper.createXMLStreamReaderIfFastInfoset(inputStream);
+			if (null == streamReader) {
+				streamReader = inputFactory.createXMLStreamReader(inputStream);
+			}
+			qname = readRootQNameAndClose(streamReader);
+		}
+
+		public void streamSource(Reader reader) throws XMLStreamException {
+			qname = readRootQNameAndClose(inputFactory.createXMLStreamReader(reader));
+		}
+
+		public void source(String systemId) throws Exception {
+			throw new IllegalArgumentException("Source with system id " + systemId + " can not be peeked");
+		}
+	}
+
+	private static class RootElementHandler extends DefaultHandler {
+
+		QName qname;
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes)
+				throws SAXException {
+			this.qname = new QName(null != uri ? uri : "", localName);
+			throw new RootElementFoundException();
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static class RootElementFoundException extends SAXException {
+
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.util;
+
+import java.lang.reflect.Method;
+import java.util.Iterator;
+
+import org.springframework.util.ReflectionUtils;
+import org.springframework.ws.transport.AbstractReceiverConnection;
+import org.springframework.ws.transport.WebServiceConnection;
+import org.springframework.ws.transport.context.TransportContext;
+import org.springframework.ws.transport.context.TransportContextHolder;
+
+/**
+ * Reads request properties announced by the transport of the current thread.
+ *
+ * <p>
+ * Request headers are only exposed by {@link AbstractReceiverConnection}s
+ * through a protected method, which is made accessible once.
+ */
+public class TransportHelper {
+
+	private static final Method getRequestHeaders = ReflectionUtils.findMethod(AbstractReceiverConnection.class,
+			"getRequestHeaders", String.class);
+
+	static {
+		ReflectionUtils.makeAccessible(getRequestHeaders);
+	}
+
+	/**
+	 * Returns the values of a request header of the current connection, or
+	 * {@code null} if there is no connection or it does not expose headers.
+	 */
+	@SuppressWarnings("unchecked")
+	public static Iterator<String> getRequestHeaders(String name) {
+		TransportContext transportContext = TransportContextHolder.getTransportContext();
+		if (null == transportContext) {
+			return null;
+		}
+		WebServiceConnection connection = transportContext.getConnection();
+		if (!(connection instanceof AbstractReceiverConnection)) {
+			return null;
+		}
+		return (Iterator<String>) ReflectionUtils.invokeMethod(getRequestHeaders, connection, name);
+	}
+
+	/**
+	 * Returns the first value of a request header of the current connection, or
+	 * {@code null} if it is not available.
+	 */
+	public static String getRequestHeader(String name) {
+		Iterator<String> values = getRequestHeaders(name);
+		return null != values && values.hasNext() ? values.next() : null;
+	}
+
+	/**
+	 * Returns the {@code Content-Length} of the current request, or {@code -1}
+	 * if it is not available.
+	 */
+	public static long getRequestContentLength() {
+		try {
+			String contentLength = getRequestHeader("Content-Length");
+			return null != contentLength ? Long.parseLong(contentLength.trim()) : -1;
+		} catch (Exception ex) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.validation;
+
+import org.springframework.ws.WebServiceException;
+import org.springframework.ws.soap.server.endpoint.annotation.FaultCode;
+import org.springframework.ws.soap.server.endpoint.annotation.SoapFault;
+
+/**
+ * Thrown when a request payload does not conform to the schema of a
+ * {@link ValidatePayload} operation. Resolved to a {@code Client} fault.
+ */
+@SoapFault(faultCode = FaultCode.CLIENT)
+public class PayloadValidationException extends WebServiceException {
+
+	private static final long serialVersionUID = 1L;
+
+	public PayloadValidationException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
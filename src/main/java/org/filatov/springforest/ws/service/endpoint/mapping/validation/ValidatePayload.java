@@ -0,0 +1,24 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.validation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@code @WebMethod} whose request payload is validated against its
+ * schema while it is unmarshalled. Invalid requests are rejected with a
+ * {@link PayloadValidationException}.
+ *
+ * <p>
+ * Like the JAX-WS annotations, it may be placed on the endpoint method or on
+ * the {@code @WebService} interface method it implements. The schema is
+ * compiled once, from the configured schema locations of the payload
+ * processor or else from the JAXB metadata of the request wrapper.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ValidatePayload {
+}
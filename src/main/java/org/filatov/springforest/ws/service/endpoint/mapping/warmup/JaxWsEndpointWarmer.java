@@ -0,0 +1,297 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.filatov.springforest.ws.service.endpoint.mapping.JaxWsAnnotationMethodEndpointMapping;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.OrderComparator;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.WebServiceMessageFactory;
+import org.springframework.ws.context.DefaultMessageContext;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.pox.dom.DomPoxMessageFactory;
+import org.springframework.ws.server.EndpointAdapter;
+import org.springframework.ws.server.EndpointInvocationChain;
+import org.springframework.ws.server.endpoint.MethodEndpoint;
+import org.springframework.xml.transform.TransformerHelper;
+
+/**
+ * Warms up every operation registered by the
+ * {@link JaxWsAnnotationMethodEndpointMapping}s of the application context
+ * when the context is refreshed, so the first requests after a deployment do
+ * not pay for class loading, JAXB context creation and interpreted code.
+ *
+ * <p>
+ * Each operation with a {@linkplain #setSamplePayloads(Map) sample payload} is
+ * looked up and invoked {@linkplain #setIterations(int) repeatedly} through
+ * the mappings and {@link EndpointAdapter}s of the context. Further
+ * {@linkplain #setOperations(Set) operations}, or
+ * {@linkplain #setWarmUpAllOperations(boolean) all of them}, can be warmed up
+ * with a synthesized payload consisting of the empty operation element.
+ * Warm-up requests reach the endpoint methods, so only select operations
+ * tolerating such calls; failing requests are logged and do not stop the
+ * warm-up. They are not recorded in the dispatch metrics and do not count
+ * against concurrency limits.
+ *
+ * <p>
+ * The warm-up runs on the refreshing thread, so the context is not reported
+ * refreshed before it is done. {@link #isReady()} then returns {@code true}
+ * and a {@link WarmUpCompletedEvent} is published.
+ */
+public class JaxWsEndpointWarmer implements ApplicationListener<ContextRefreshedEvent> {
+
+	protected static final Log logger = LogFactory.getLog(JaxWsEndpointWarmer.class);
+
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	/**
+	 * Name of the message context property marking warm-up requests. Marked
+	 * requests bypass the response cache, so the whole dispatch is warmed up.
+	 */
+	public static final String WARM_UP_PROPERTY = JaxWsEndpointWarmer.class.getName() + ".WARM_UP";
+
+	/** Default number of requests per operation. */
+	public static final int DEFAULT_ITERATIONS = 100;
+
+	private final TransformerHelper transformerHelper = new TransformerHelper();
+
+	private int iterations = DEFAULT_ITERATIONS;
+
+	private Map<QName, Resource> samplePayloads = Collections.emptyMap();
+
+	private Set<QName> operations = Collections.emptySet();
+
+	private boolean warmUpAllOperations = false;
+
+	private WebServiceMessageFactory messageFactory;
+
+	private volatile boolean ready = false;
+
+	/**
+	 * Returns the number of requests per operation.
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Sets the number of requests per operation. Defaults to
+	 * {@value #DEFAULT_ITERATIONS}.
+	 */
+	public void setIterations(int iterations) {
+		Assert.isTrue(iterations > 0, "iterations must be positive");
+		this.iterations = iterations;
+	}
+
+	/**
+	 * Returns the sample request payloads by operation name.
+	 */
+	public Map<QName, Resource> getSamplePayloads() {
+		return Collections.unmodifiableMap(samplePayloads);
+	}
+
+	/**
+	 * Sets the sample request payloads by operation name. Operations without
+	 * sample are warmed up with their empty operation element.
+	 */
+	public void setSamplePayloads(Map<QName, Resource> samplePayloads) {
+		this.samplePayloads = new HashMap<QName, Resource>(samplePayloads);
+	}
+
+	/**
+	 * Returns the operations warmed up besides those with a sample payload.
+	 */
+	public Set<QName> getOperations() {
+		return Collections.unmodifiableSet(operations);
+	}
+
+	/**
+	 * Sets the operations warmed up besides those with a
+	 * {@linkplain #setSamplePayloads(Map) sample payload}, with their empty
+	 * operation element.
+	 */
+	public void setOperations(Set<QName> operations) {
+		this.operations = new HashSet<QName>(operations);
+	}
+
+	/**
+	 * Returns {@code true} if every registered operation is warmed up.
+	 */
+	public boolean isWarmUpAllOperations() {
+		return warmUpAllOperations;
+	}
+
+	/**
+	 * Sets whether every registered operation is warmed up, those without
+	 * sample payload with their empty operation element. Defaults to
+	 * {@code false}: only operations with a sample payload or listed in
+	 * {@linkplain #setOperations(Set) operations} are warmed up.
+	 */
+	public void setWarmUpAllOperations(boolean warmUpAllOperations) {
+		this.warmUpAllOperations = warmUpAllOperations;
+	}
+
+	/**
+	 * Returns the factory of the warm-up messages, or {@code null} if it is
+	 * taken from the context.
+	 */
+	public WebServiceMessageFactory getMessageFactory() {
+		return messageFactory;
+	}
+
+	/**
+	 * Sets the factory of the warm-up messages. By default the single
+	 * {@link WebServiceMessageFactory} bean of the context is used, or plain
+	 * XML messages if there is none or several.
+	 */
+	public void setMessageFactory(WebServiceMessageFactory messageFactory) {
+		this.messageFactory = messageFactory;
+	}
+
+	/**
+	 * Returns {@code true} once all operations have been warmed up.
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		ApplicationContext applicationContext = event.getApplicationContext();
+		ready = false;
+		long start = System.currentTimeMillis();
+		List<JaxWsAnnotationMethodEndpointMapping> mappings = new ArrayList<JaxWsAnnotationMethodEndpointMapping>(
+				applicationContext.getBeansOfType(JaxWsAnnotationMethodEndpointMapping.class).values());
+		OrderComparator.sort(mappings);
+		List<EndpointAdapter> adapters = new ArrayList<EndpointAdapter>(
+				applicationContext.getBeansOfType(EndpointAdapter.class).values());
+		OrderComparator.sort(adapters);
+		WebServiceMessageFactory messageFactory = getMessageFactory(applicationContext);
+
+		int operationCount = 0;
+		int failedOperationCount = 0;
+		for (JaxWsAnnotationMethodEndpointMapping mapping : mappings) {
+			for (Map.Entry<QName, MethodEndpoint> entry : mapping.getRegisteredEndpoints().entrySet()) {
+				if (!isWarmedUp(entry.getKey())) {
+					continue;
+				}
+				operationCount++;
+				if (!warmUp(entry.getKey(), entry.getValue(), mappings, adapters, messageFactory)) {
+					failedOperationCount++;
+				}
+			}
+		}
+		long duration = System.currentTimeMillis() - start;
+		if (logger.isInfoEnabled()) {
+			logger.info("Warmed up " + operationCount + " operations in " + duration + " ms"
+					+ (failedOperationCount > 0 ? ", " + failedOperationCount + " failed" : ""));
+		}
+		ready = true;
+		applicationContext.publishEvent(new WarmUpCompletedEvent(this, operationCount, failedOperationCount,
+				duration));
+	}
+
+	private boolean isWarmedUp(QName operation) {
+		return warmUpAllOperations || samplePayloads.containsKey(operation) || operations.contains(operation);
+	}
+
+	private WebServiceMessageFactory getMessageFactory(ApplicationContext applicationContext) {
+		if (null != messageFactory) {
+			return messageFactory;
+		}
+		Map<String, WebServiceMessageFactory> messageFactories = applicationContext
+				.getBeansOfType(WebServiceMessageFactory.class);
+		if (1 == messageFactories.size()) {
+			return messageFactories.values().iterator().next();
+		}
+		return new DomPoxMessageFactory();
+	}
+
+	/**
+	 * Sends the warm-up requests of a single operation.
+	 *
+	 * @return {@code false} if a request failed
+	 */
+	private boolean warmUp(QName operation, MethodEndpoint methodEndpoint,
+			List<JaxWsAnnotationMethodEndpointMapping> mappings, List<EndpointAdapter> adapters,
+			WebServiceMessageFactory messageFactory) {
+		try {
+			byte[] payload = getSamplePayload(operation);
+			for (int i = 0; i < iterations; i++) {
+				MessageContext messageContext = new DefaultMessageContext(createRequest(messageFactory,
+						new StreamSource(new ByteArrayInputStream(payload))), messageFactory);
+				messageContext.setProperty(WARM_UP_PROPERTY, Boolean.TRUE);
+				Object endpoint = getEndpoint(messageContext, mappings, methodEndpoint);
+				getEndpointAdapter(endpoint, adapters).invoke(messageContext, endpoint);
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Warmed up " + operation + " with " + iterations + " requests");
+			}
+			return true;
+		} catch (Exception ex) {
+			// synthesized payloads are expected to fail on validating endpoints
+			if (samplePayloads.containsKey(operation)) {
+				logger.warn("Warm-up request of " + operation + " failed", ex);
+			} else if (logger.isDebugEnabled()) {
+				logger.debug("Warm-up request of " + operation + " failed", ex);
+			}
+			return false;
+		}
+	}
+
+	private byte[] getSamplePayload(QName operation) throws Exception {
+		Resource resource = samplePayloads.get(operation);
+		if (null != resource) {
+			return FileCopyUtils.copyToByteArray(resource.getInputStream());
+		}
+		String namespace = operation.getNamespaceURI();
+		String element = namespace.isEmpty() ? "<" + operation.getLocalPart() + "/>"
+				: "<ns:" + operation.getLocalPart() + " xmlns:ns=\"" + namespace + "\"/>";
+		return element.getBytes(CHARSET);
+	}
+
+	private WebServiceMessage createRequest(WebServiceMessageFactory messageFactory, Source payload)
+			throws Exception {
+		WebServiceMessage request = messageFactory.createWebServiceMessage();
+		transformerHelper.transform(payload, request.getPayloadResult());
+		return request;
+	}
+
+	private static Object getEndpoint(MessageContext messageContext,
+			List<JaxWsAnnotationMethodEndpointMapping> mappings, MethodEndpoint methodEndpoint) throws Exception {
+		for (JaxWsAnnotationMethodEndpointMapping mapping : mappings) {
+			EndpointInvocationChain chain = mapping.getEndpoint(messageContext);
+			if (null != chain) {
+				return chain.getEndpoint();
+			}
+		}
+		return methodEndpoint;
+	}
+
+	private static EndpointAdapter getEndpointAdapter(Object endpoint, List<EndpointAdapter> adapters) {
+		for (EndpointAdapter adapter : adapters) {
+			if (adapter.supports(endpoint)) {
+				return adapter;
+			}
+		}
+		throw new IllegalStateException("No adapter for endpoint [" + endpoint + "]");
+	}
+}
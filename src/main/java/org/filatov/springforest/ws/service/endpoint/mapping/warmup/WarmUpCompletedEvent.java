@@ -0,0 +1,47 @@
+package org.filatov.springforest.ws.service.endpoint.mapping.warmup;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published by a {@link JaxWsEndpointWarmer} when all operations have been
+ * warmed up.
+ */
+public class WarmUpCompletedEvent extends ApplicationEvent {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int operationCount;
+
+	private final int failedOperationCount;
+
+	private final long duration;
+
+	public WarmUpCompletedEvent(JaxWsEndpointWarmer source, int operationCount, int failedOperationCount,
+			long duration) {
+		super(source);
+		this.operationCount = operationCount;
+		this.failedOperationCount = failedOperationCount;
+		this.duration = duration;
+	}
+
+	/**
+	 * Returns the number of operations warmed up.
+	 */
+	public int getOperationCount() {
+		return operationCount;
+	}
+
+	/**
+	 * Returns the number of operations whose warm-up requests failed.
+	 */
+	public int getFailedOperationCount() {
+		return failedOperationCount;
+	}
+
+	/**
+	 * Returns the duration of the warm-up in milliseconds.
+	 */
+	public long getDuration() {
+		return duration;
+	}
+}